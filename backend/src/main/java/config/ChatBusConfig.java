@@ -0,0 +1,34 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import service.ChatBus;
+import service.LocalChatBus;
+import service.TcpChatBus;
+
+import java.util.Arrays;
+
+/**
+ * Selects the {@link ChatBus}: in-process unless {@code chat.bus.port} is set, in which case
+ * this node joins the other nodes listed in {@code chat.bus.peers} over TCP. Linked nodes each
+ * need their own {@code chat.bus.node-id}.
+ */
+@Configuration
+public class ChatBusConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChatBus chatBus(@Value("${chat.bus.node-id:0}") int nodeId,
+                           @Value("${chat.bus.port:0}") int port,
+                           @Value("${chat.bus.peers:}") String peers,
+                           @Value("${chat.bus.connect-timeout-ms:2000}") int connectTimeoutMs,
+                           @Value("${chat.bus.reconnect-ms:1000}") long reconnectMs,
+                           @Value("${chat.bus.queue-bytes:4194304}") long queueBytes) {
+        if (port <= 0) {
+            return new LocalChatBus();
+        }
+        return new TcpChatBus(nodeId, port,
+                Arrays.stream(peers.split(",")).map(String::trim).filter(peer -> !peer.isEmpty()).toList(),
+                connectTimeoutMs, reconnectMs, queueBytes);
+    }
+}
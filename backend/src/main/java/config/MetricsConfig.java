@@ -0,0 +1,101 @@
+package config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import security.SessionKeyRegistry;
+import service.ChatBus;
+import service.RenditionTranscoder;
+import service.StreamRecorder;
+import service.TcpChatBus;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Node-wide meters that are not tied to a single stream: delivery pool saturation, recorder drops,
+ * rendition transcoding, session keys and the chat bus.
+ * Per-stream meters live in {@link service.StreamMetrics}.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Queue depth and active threads of the delivery and lazy-decrypt pools, the first sign that a node is out of egress or crypto capacity.
+     */
+    @Bean
+    public MeterBinder deliveryExecutorMetrics(@Qualifier("viewerDeliveryExecutor") ExecutorService viewerDelivery,
+                                               @Qualifier("chatDeliveryExecutor") ExecutorService chatDelivery,
+                                               @Qualifier("frameDecryptExecutor") ExecutorService frameDecrypt) {
+        return registry -> {
+            new ExecutorServiceMetrics(viewerDelivery, "viewer-delivery", List.of()).bindTo(registry);
+            new ExecutorServiceMetrics(chatDelivery, "chat-delivery", List.of()).bindTo(registry);
+            new ExecutorServiceMetrics(frameDecrypt, "frame-decrypt", List.of()).bindTo(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder renditionMetrics(RenditionTranscoder transcoder,
+                                        @Qualifier("renditionExecutor") ExecutorService renditionExecutor) {
+        return registry -> {
+            new ExecutorServiceMetrics(renditionExecutor, "rendition", List.of()).bindTo(registry);
+            FunctionCounter.builder("stream.rendition.transcoded.frames", transcoder,
+                            RenditionTranscoder::getTranscodedFrames)
+                    .description("Source frames scaled into a lower rendition")
+                    .register(registry);
+            FunctionCounter.builder("stream.rendition.skipped.frames", transcoder,
+                            RenditionTranscoder::getSkippedFrames)
+                    .description("Source frames a rendition skipped because the transcoder was behind")
+                    .register(registry);
+            FunctionCounter.builder("stream.rendition.failed.frames", transcoder,
+                            RenditionTranscoder::getFailedFrames)
+                    .description("Source frames that could not be transcoded")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder recorderMetrics(StreamRecorder streamRecorder) {
+        return registry -> FunctionCounter.builder("stream.recording.dropped.frames", streamRecorder,
+                        StreamRecorder::getDroppedFrames)
+                .description("Frames left out of recordings because the writer could not keep up")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder sessionKeyMetrics(SessionKeyRegistry keyRegistry) {
+        return registry -> {
+            Gauge.builder("session.keys", keyRegistry, SessionKeyRegistry::size)
+                    .description("Sessions holding registered keys")
+                    .register(registry);
+            FunctionCounter.builder("session.keys.evicted", keyRegistry, SessionKeyRegistry::getEvictedKeys)
+                    .description("Sessions whose keys were dropped for expiry, idleness or the size cap")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder chatBusMetrics(ChatBus chatBus) {
+        return registry -> {
+            if (!(chatBus instanceof TcpChatBus bus)) {
+                return;
+            }
+            Gauge.builder("chat.bus.peers.connected", bus, TcpChatBus::getConnectedPeers)
+                    .description("Other nodes this node currently has a chat bus connection to")
+                    .register(registry);
+            FunctionCounter.builder("chat.bus.published", bus, TcpChatBus::getPublishedBatches)
+                    .description("Chat batches from this node sent to the other nodes")
+                    .register(registry);
+            FunctionCounter.builder("chat.bus.received", bus, TcpChatBus::getReceivedBatches)
+                    .description("Chat batches received from other nodes")
+                    .register(registry);
+            FunctionCounter.builder("chat.bus.dropped", bus, TcpChatBus::getDroppedBatches)
+                    .description("Chat batches not delivered to a node because its queue was full or its connection failed")
+                    .register(registry);
+        };
+    }
+}
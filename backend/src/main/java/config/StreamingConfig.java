@@ -0,0 +1,99 @@
+package config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executors for the streaming pipeline and chat.
+ * Viewer and chat delivery run here instead of on servlet or WebSocket threads, so the number
+ * of connected clients is independent of the container's thread pool, and a slow client
+ * never holds up the thread that received the frame or message.
+ */
+@Configuration
+public class StreamingConfig {
+
+    /**
+     * Small fixed pool that performs the non-blocking MJPEG writes for all viewers.
+     * Each viewer has at most one delivery task queued at a time.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService viewerDeliveryExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(threads, daemonThreads("viewer-delivery-"));
+    }
+
+    /**
+     * Pool for chat sends. WebSocket sends block until the socket accepts the data, so each
+     * slow recipient can occupy a thread for up to the chat send time limit; the pool is
+     * sized larger than the viewer pool for that reason.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService chatDeliveryExecutor() {
+        int threads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(threads, daemonThreads("chat-delivery-"));
+    }
+
+    /**
+     * Bounded pool that scales frames into the lower renditions. Both the threads and the queue
+     * are capped; when it is saturated, tasks are rejected and renditions skip source frames.
+     * @param threads Worker threads; 0 means half the cores
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService renditionExecutor(@Value("${stream.rendition.threads:0}") int threads,
+                                             @Value("${stream.rendition.queue-size:64}") int queueSize) {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("rendition-"));
+    }
+
+    /**
+     * Bounded pool that decrypts frames of watched streams when decryption is lazy
+     * ({@code stream.decrypt.lazy.enabled}). Each stream has at most one task queued at a time, so the
+     * queue bounds the number of streams waiting; when it is full, a stream keeps its newest
+     * frame encrypted until its next frame arrives.
+     * @param threads Worker threads; 0 means one per core
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService frameDecryptExecutor(@Value("${stream.decrypt.lazy.threads:0}") int threads,
+                                                @Value("${stream.decrypt.lazy.queue-size:256}") int queueSize) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads("lazy-decrypt-"));
+    }
+
+    /**
+     * Timer thread that closes chat batching windows.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService chatBatchScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreads("chat-batch-"));
+    }
+
+    /**
+     * Timer thread that paces recorded replays. It only hands the next part to the connection;
+     * the writes are non-blocking, so no thread waits between frames.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService replayScheduler() {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreads("replay-pacer-"));
+    }
+
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -2,6 +2,7 @@ package config;
 
 import controller.VideoStreamHandler;
 import controller.ChatWebSocketHandler;
+import controller.WatchWebSocketHandler;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,7 +12,7 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 /**
- * Configures WebSocket endpoints for video streaming and chat functionality.
+ * Configures WebSocket endpoints for video streaming, WebSocket viewing and chat functionality.
  * Sets buffer sizes to 2MB to accommodate encrypted video frames.
  */
 @Configuration
@@ -32,11 +33,17 @@ public class WebSocketConfig implements WebSocketConfigurer {
         ChatWebSocketHandler chatWebSocketHandler =
                 applicationContext.getBean(ChatWebSocketHandler.class);
 
+        WatchWebSocketHandler watchWebSocketHandler =
+                applicationContext.getBean(WatchWebSocketHandler.class);
+
         registry.addHandler(videoStreamHandler, "/stream")
                 .setAllowedOriginPatterns("*");
 
         registry.addHandler(chatWebSocketHandler, "/chat")
                 .setAllowedOriginPatterns("*");
+
+        registry.addHandler(watchWebSocketHandler, "/watch")
+                .setAllowedOriginPatterns("*");
     }
 
     @Bean
@@ -0,0 +1,100 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import service.Frame;
+import service.Rendition;
+import service.ViewerRegistry;
+import service.ViewerSession;
+
+import java.io.IOException;
+
+/**
+ * One MJPEG viewer served with Servlet async I/O.
+ * No thread is parked per viewer: frames are pushed by the StreamManager, and writes run on
+ * the shared delivery executor only while the container reports the socket as writable
+ * (see {@link ViewerSession} for the latest-frame-wins and eviction policy).
+ */
+class AsyncMjpegViewer extends ViewerSession implements WriteListener, AsyncListener {
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream outputStream;
+
+    AsyncMjpegViewer(ViewerRegistry registry, String username, Rendition rendition, AsyncContext asyncContext)
+            throws IOException {
+        super(registry, username, rendition);
+        this.asyncContext = asyncContext;
+        this.outputStream = asyncContext.getResponse().getOutputStream();
+    }
+
+    /**
+     * Switches the response to non-blocking mode and subscribes to the stream.
+     * @return false if the stream ended before the subscription was made.
+     */
+    @Override
+    public boolean start() {
+        asyncContext.addListener(this);
+        outputStream.setWriteListener(this);
+        return super.start();
+    }
+
+    @Override
+    protected boolean isWritable() {
+        return outputStream.isReady();
+    }
+
+    /**
+     * Sends the pre-encoded part (boundary, headers and JPEG) with one write.
+     * The container copies it into its own buffer, so the frame can be released right after.
+     */
+    @Override
+    protected void send(Frame frame) throws IOException {
+        outputStream.write(frame.array(), frame.partOffset(), frame.partLength());
+    }
+
+    @Override
+    protected void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    protected void closeTransport() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException ignored) {
+            // Already completed by the container (client went away)
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        scheduleDrain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close("connection error - " + t.getMessage());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        close("request completed");
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        close("async timeout");
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
@@ -0,0 +1,201 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import service.RecordedSegment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One replay of a recording served with Servlet async I/O, paced by the recorded timestamps.
+ *
+ * No thread waits between frames: the pacer's timer hands over each part when it is due, and it
+ * is written once the container reports the connection as writable. Writes never block, so
+ * everything but {@link #start()} runs on the single pacer thread, for all replays.
+ *
+ * Parts are slices of the memory-mapped segments. On Tomcat they are written as
+ * buffers straight into the connector; other containers only take byte arrays, so there each
+ * part is copied into a heap buffer owned by the replay first.
+ */
+class AsyncReplay implements WriteListener, AsyncListener {
+
+    /** Longest pause honoured between two recorded frames, so gaps in a recording don't stall replay. */
+    private static final long MAX_FRAME_GAP_MS = 1000;
+
+    private final String username;
+    private final List<Path> segments;
+    private final long fromMillis;
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream outputStream;
+    private final ScheduledExecutorService pacer;
+
+    private int segmentIndex = -1;
+    private RecordedSegment segment;
+    private int frameIndex;
+    private long previousTimestamp = -1;
+
+    /** The part that is due, or null while waiting for the pacer. */
+    private ByteBuffer due;
+    private boolean unflushed;
+    private boolean exhausted;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private int frameCount;
+    private byte[] copyBuffer = new byte[0];
+
+    AsyncReplay(String username, List<Path> segments, long fromMillis, AsyncContext asyncContext,
+                ScheduledExecutorService pacer) throws IOException {
+        this.username = username;
+        this.segments = segments;
+        this.fromMillis = fromMillis;
+        this.asyncContext = asyncContext;
+        this.outputStream = asyncContext.getResponse().getOutputStream();
+        this.pacer = pacer;
+    }
+
+    /**
+     * Switches the response to non-blocking mode; the first part goes out right away.
+     */
+    void start() throws IOException {
+        asyncContext.addListener(this);
+        try {
+            due = nextPart();
+        } catch (IOException | RuntimeException e) {
+            close("recording unreadable - " + e.getMessage());
+            return;
+        }
+        outputStream.setWriteListener(this);
+    }
+
+    /**
+     * Writes the due part and flushes while the connection accepts data. Runs on the pacer.
+     */
+    private void pump() {
+        try {
+            while (!closed.get() && outputStream.isReady()) {
+                if (due != null) {
+                    write(due);
+                    due = null;
+                    unflushed = true;
+                    frameCount++;
+                    scheduleNext();
+                } else if (unflushed) {
+                    unflushed = false;
+                    outputStream.flush();
+                } else {
+                    if (exhausted) {
+                        close("finished after " + frameCount + " frames");
+                    }
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close("connection closed - " + e.getMessage());
+        }
+    }
+
+    private void write(ByteBuffer part) throws IOException {
+        if (outputStream instanceof CoyoteOutputStream coyote) {
+            coyote.write(part);
+            return;
+        }
+        if (copyBuffer.length < part.remaining()) {
+            copyBuffer = new byte[part.remaining()];
+        }
+        int length = part.remaining();
+        part.get(copyBuffer, 0, length);
+        outputStream.write(copyBuffer, 0, length);
+    }
+
+    /**
+     * Arms the pacer for the next recorded frame, or marks the replay as exhausted.
+     */
+    private void scheduleNext() throws IOException {
+        long timestamp = previousTimestamp;
+        ByteBuffer part = nextPart();
+        if (part == null) {
+            return;
+        }
+        long delay = Math.max(0, Math.min(MAX_FRAME_GAP_MS, previousTimestamp - timestamp));
+        try {
+            pacer.schedule(() -> {
+                due = part;
+                pump();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            close("shutting down");
+        }
+    }
+
+    /**
+     * Advances to the next recorded frame, opening segments as needed.
+     * @return Its part, or null once the recording is exhausted.
+     */
+    private ByteBuffer nextPart() throws IOException {
+        while (segment == null || frameIndex >= segment.frameCount()) {
+            if (++segmentIndex >= segments.size()) {
+                exhausted = true;
+                return null;
+            }
+            segment = RecordedSegment.open(segments.get(segmentIndex));
+            frameIndex = segment.firstFrameAtOrAfter(fromMillis);
+        }
+        previousTimestamp = segment.timestampMillis(frameIndex);
+        return segment.part(frameIndex++);
+    }
+
+    private void close(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        System.out.println("Replay of " + username + " ended (" + reason + ")");
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException ignored) {
+            // Already completed by the container (client went away)
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        try {
+            pacer.execute(this::pump);
+        } catch (RejectedExecutionException e) {
+            close("shutting down");
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close("connection error - " + t.getMessage());
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        close("request completed");
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        close("async timeout");
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
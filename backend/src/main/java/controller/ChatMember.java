@@ -0,0 +1,143 @@
+package controller;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound side of one chat connection.
+ *
+ * Messages are queued and written in order by at most one delivery task at a time, so a
+ * catch-up batch always reaches the client before the live messages that follow it. The
+ * queue is bounded in bytes and drops its oldest messages on overflow; a client whose
+ * current write has been blocked longer than the send time limit is disconnected.
+ */
+class ChatMember {
+
+    final WebSocketSession session;
+
+    private final Executor deliveryExecutor;
+    private final ChatMeters meters;
+    private final long sendTimeLimitNanos;
+    private final int bufferSizeLimit;
+
+    private final Queue<TextMessage> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile long sendStartedNanos;
+
+    ChatMember(WebSocketSession session, Executor deliveryExecutor, ChatMeters meters,
+               int sendTimeLimitMs, int bufferSizeLimit) {
+        this.session = session;
+        this.deliveryExecutor = deliveryExecutor;
+        this.meters = meters;
+        this.sendTimeLimitNanos = sendTimeLimitMs * 1_000_000L;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    /**
+     * Queues a message for delivery. Never blocks.
+     */
+    void offer(TextMessage message) {
+        if (closed.get()) {
+            return;
+        }
+
+        long sendStarted = sendStartedNanos;
+        if (sendStarted != 0 && System.nanoTime() - sendStarted > sendTimeLimitNanos) {
+            if (stop("send time limit exceeded")) {
+                // Offers run under the room's lock, so the socket is closed from a delivery thread
+                try {
+                    deliveryExecutor.execute(() -> closeSession(CloseStatus.SESSION_NOT_RELIABLE));
+                } catch (RejectedExecutionException ignored) {
+                    // shutting down
+                }
+            }
+            return;
+        }
+
+        queue.add(message);
+        long queued = queuedBytes.addAndGet(message.getPayloadLength());
+        while (queued > bufferSizeLimit) {
+            TextMessage oldest = queue.poll();
+            if (oldest == null) {
+                break;
+            }
+            queued = queuedBytes.addAndGet(-oldest.getPayloadLength());
+            meters.droppedMessages.increment();
+        }
+
+        if (drainRequests.getAndIncrement() == 0) {
+            try {
+                deliveryExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainRequests.set(0); // shutting down
+            }
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        do {
+            TextMessage message;
+            while (!closed.get() && (message = queue.poll()) != null) {
+                queuedBytes.addAndGet(-message.getPayloadLength());
+                long sendStarted = System.nanoTime();
+                sendStartedNanos = sendStarted;
+                try {
+                    session.sendMessage(message);
+                    meters.sendTime.record(System.nanoTime() - sendStarted, TimeUnit.NANOSECONDS);
+                } catch (IOException | IllegalStateException e) {
+                    close(CloseStatus.SERVER_ERROR, "send failed - " + e.getMessage());
+                } finally {
+                    sendStartedNanos = 0;
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    void close(CloseStatus status, String reason) {
+        if (stop(reason)) {
+            closeSession(status);
+        }
+    }
+
+    /**
+     * Stops delivery and discards queued messages.
+     * @return true for the first caller only, which must then close the session.
+     */
+    private boolean stop(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        queue.clear();
+        System.err.println("Dropping chat client " + session.getAttributes().get("username") + ": " + reason);
+        return true;
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Marks the member closed after the connection went away on its own.
+     */
+    void markClosed() {
+        closed.set(true);
+        queue.clear();
+    }
+}
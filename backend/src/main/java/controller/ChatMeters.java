@@ -0,0 +1,37 @@
+package controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+
+/**
+ * Chat meters shared by all rooms and members.
+ */
+class ChatMeters {
+
+    final Counter messages;
+    final Timer fanOutTime;
+    final Timer sendTime;
+    final Counter droppedMessages;
+
+    ChatMeters(MeterRegistry registry) {
+        messages = Counter.builder("chat.messages").description("Chat messages accepted").register(registry);
+        fanOutTime = histogram(Timer.builder("chat.fanout")
+                .description("Time to stamp a batch and queue it for every member of the room"))
+                .register(registry);
+        sendTime = histogram(Timer.builder("chat.send")
+                .description("Time to write one chat frame to a member"))
+                .register(registry);
+        droppedMessages = Counter.builder("chat.dropped.messages")
+                .description("Chat frames dropped from full member queues")
+                .register(registry);
+    }
+
+    private static Timer.Builder histogram(Timer.Builder builder) {
+        return builder.publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,160 @@
+package controller;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One chat room: its members, the messages waiting for the current batching window, and a
+ * bounded history of recent messages.
+ *
+ * History is a fixed-size ring of already serialized messages in ID order, lowest evicted
+ * first. Batches from other nodes can arrive after newer local ones and are inserted in place,
+ * so a reconnecting client's {@code sinceId} finds everything it missed. Adding
+ * a message to history and fanning it out happen under the room's lock, as do taking the
+ * catch-up snapshot and joining, so a joining member sees every message exactly once:
+ * either in its catch-up batch or live.
+ */
+class ChatRoom {
+
+    final String roomId;
+    final Set<ChatMember> members = ConcurrentHashMap.newKeySet();
+
+    private List<ObjectNode> pending = new ArrayList<>();
+
+    private final long[] ids;
+    private final String[] messages;
+    private int head;
+    private int count;
+    private long historyBytes;
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+
+    ChatRoom(String roomId, int historySize) {
+        this.roomId = roomId;
+        this.ids = new long[historySize];
+        this.messages = new String[historySize];
+    }
+
+    /**
+     * Adds a message to the open batch.
+     * @return true if this opened a new batch, i.e. the caller must schedule a flush.
+     */
+    synchronized boolean enqueue(ObjectNode payload) {
+        pending.add(payload);
+        return pending.size() == 1;
+    }
+
+    /**
+     * Closes the current batch and returns its messages in arrival order.
+     */
+    synchronized List<ObjectNode> drainPending() {
+        List<ObjectNode> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    /**
+     * Records a flushed batch in history and hands it to every member.
+     * @param ids Message IDs, ascending and unique across nodes, one per entry of {@code batch}.
+     * @param batch Serialized messages.
+     * @param message The frame to send: the single message, or all of them as an array.
+     * @return Change in bytes held by this room's history.
+     */
+    synchronized long publish(long[] ids, List<String> batch, TextMessage message) {
+        long before = historyBytes;
+        for (int i = 0; i < batch.size(); i++) {
+            append(ids[i], batch.get(i));
+        }
+        for (ChatMember member : members) {
+            member.offer(message);
+        }
+        lastActivityMillis = System.currentTimeMillis();
+        return historyBytes - before;
+    }
+
+    /**
+     * Sends the member its catch-up batch and adds it to the room.
+     * @param sinceId Send messages after this ID; or -1 to send the most recent {@code replayCount}.
+     */
+    synchronized void join(ChatMember member, long sinceId, int replayCount) {
+        int from = Math.max(0, count - replayCount);
+        if (sinceId >= 0) {
+            from = count;
+            while (from > 0 && ids[slot(from - 1)] > sinceId) {
+                from--;
+            }
+        }
+        if (from < count) {
+            StringBuilder batch = new StringBuilder("[");
+            for (int i = from; i < count; i++) {
+                if (i > from) batch.append(',');
+                batch.append(messages[slot(i)]);
+            }
+            member.offer(new TextMessage(batch.append(']')));
+        }
+        members.add(member);
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Drops the oldest history entry.
+     * @return Bytes freed, or 0 if the history is empty.
+     */
+    synchronized long evictOldest() {
+        if (count == 0) return 0;
+        long freed = sizeOf(messages[head]);
+        messages[head] = null;
+        head = (head + 1) % messages.length;
+        count--;
+        historyBytes -= freed;
+        return freed;
+    }
+
+    /**
+     * @return ID of the oldest message in history, or {@link Long#MAX_VALUE} if it is empty.
+     */
+    synchronized long oldestId() {
+        return count == 0 ? Long.MAX_VALUE : ids[head];
+    }
+
+    synchronized long historyBytes() {
+        return historyBytes;
+    }
+
+    boolean isIdleSince(long cutoffMillis) {
+        return members.isEmpty() && lastActivityMillis < cutoffMillis;
+    }
+
+    /**
+     * Adds a message to history at its place in ID order; usually that is the end, so this only
+     * shifts entries when a batch from another node arrives late.
+     */
+    private void append(long id, String json) {
+        if (count == messages.length) {
+            if (id < ids[head]) return; // older than all of a full history
+            evictOldest();
+        }
+        int index = count;
+        while (index > 0 && ids[slot(index - 1)] > id) {
+            ids[slot(index)] = ids[slot(index - 1)];
+            messages[slot(index)] = messages[slot(index - 1)];
+            index--;
+        }
+        ids[slot(index)] = id;
+        messages[slot(index)] = json;
+        count++;
+        historyBytes += sizeOf(json);
+    }
+
+    private int slot(int index) {
+        return (head + index) % messages.length;
+    }
+
+    private static long sizeOf(String json) {
+        return 2L * json.length();
+    }
+}
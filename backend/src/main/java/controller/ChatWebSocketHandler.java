@@ -1,24 +1,108 @@
 package controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.springframework.web.util.UriComponentsBuilder;
+import service.ChatBus;
 
-import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Simple chat WebSocket handler.
  * All clients with the same roomId share messages.
- * URL format: ws://localhost:8080/chat?roomId=alice&username=bob
+ * URL format: ws://localhost:8080/chat?roomId=alice&username=bob[&sinceId=123]
+ *
+ * Fan-out never runs on the receiving thread. Messages arriving within
+ * {@code chat.batch-window-ms} are coalesced per room into one frame (a JSON array when
+ * there is more than one message), built once and shared by all recipients. Each recipient
+ * has its own bounded, ordered send queue (see {@link ChatMember}), so one slow member
+ * cannot stall the room.
+ *
+ * Every message is stamped with an {@code id} and a server timestamp {@code ts} and kept in
+ * the room's history. On connect a client receives, as one JSON array, the last
+ * {@code chat.history.replay-messages} messages, or everything after {@code sinceId} when
+ * it reconnects with the last ID it saw. IDs are derived from the clock
+ * (epoch millis * 1000 + counter * 100 + node ID), so they keep increasing across restarts,
+ * never collide between nodes and stay within JavaScript's safe integer range.
+ *
+ * Flushed batches go through the {@link ChatBus}, which hands them to this node and, when
+ * nodes are linked ({@code chat.bus.port}), once to every other node; each node then fans them
+ * out to its own members of the room, so members of one room can be connected to different
+ * nodes. A node keeps history only for rooms that have been joined on it, and only from then
+ * on. Seeing another node's IDs moves this node's ID counter past them, so IDs keep
+ * increasing across the cluster as long as the nodes' clocks roughly agree; history is kept in
+ * ID order whatever order batches from different nodes arrive in.
  */
 @Component
 public class ChatWebSocketHandler extends TextWebSocketHandler {
 
-    private final Map<String, Set<WebSocketSession>> rooms = new ConcurrentHashMap<>();
+    private static final long IDLE_SWEEP_INTERVAL_MS = 60_000;
+
+    private final Map<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicLong historyBytes = new AtomicLong();
+
+    private final ObjectMapper objectMapper;
+    private final ChatMeters meters;
+    private final ChatBus chatBus;
+    private final int nodeId;
+    private final ExecutorService deliveryExecutor;
+    private final ScheduledExecutorService batchScheduler;
+    private final long batchWindowMs;
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final int historySize;
+    private final int replayMessages;
+    private final long maxHistoryBytes;
+    private final long idleTimeoutMs;
+
+    public ChatWebSocketHandler(ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                ChatBus chatBus,
+                                @Qualifier("chatDeliveryExecutor") ExecutorService deliveryExecutor,
+                                @Qualifier("chatBatchScheduler") ScheduledExecutorService batchScheduler,
+                                @Value("${chat.batch-window-ms:20}") long batchWindowMs,
+                                @Value("${chat.session.send-time-limit-ms:5000}") int sendTimeLimitMs,
+                                @Value("${chat.session.buffer-bytes:65536}") int bufferSizeLimit,
+                                @Value("${chat.history.messages:100}") int historySize,
+                                @Value("${chat.history.replay-messages:50}") int replayMessages,
+                                @Value("${chat.history.max-bytes:16777216}") long maxHistoryBytes,
+                                @Value("${chat.history.idle-timeout-ms:600000}") long idleTimeoutMs) {
+        this.objectMapper = objectMapper;
+        this.meters = new ChatMeters(meterRegistry);
+        this.chatBus = chatBus;
+        this.nodeId = chatBus.nodeId();
+        Gauge.builder("chat.history.bytes", historyBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("chat.rooms", rooms, Map::size).register(meterRegistry);
+        this.deliveryExecutor = deliveryExecutor;
+        this.batchScheduler = batchScheduler;
+        this.batchWindowMs = batchWindowMs;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.historySize = historySize;
+        this.replayMessages = replayMessages;
+        this.maxHistoryBytes = maxHistoryBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        batchScheduler.scheduleWithFixedDelay(this::evictIdleRooms,
+                IDLE_SWEEP_INTERVAL_MS, IDLE_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        chatBus.subscribe(this::deliver);
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -42,16 +126,37 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
 
         String roomId = params.getFirst("roomId");
         String username = params.getFirst("username");
+        String sinceIdParam = params.getFirst("sinceId");
 
         if (roomId == null || roomId.isBlank() || username == null || username.isBlank()) {
             session.close(CloseStatus.BAD_DATA.withReason("roomId and username required"));
             return;
         }
 
+        long sinceId = -1;
+        if (sinceIdParam != null) {
+            try {
+                sinceId = Long.parseLong(sinceIdParam);
+            } catch (NumberFormatException e) {
+                session.close(CloseStatus.BAD_DATA.withReason("Invalid sinceId"));
+                return;
+            }
+        }
+
+        ChatMember member = new ChatMember(session, deliveryExecutor, meters, sendTimeLimitMs, bufferSizeLimit);
+
         session.getAttributes().put("roomId", roomId);
         session.getAttributes().put("username", username);
+        session.getAttributes().put("member", member);
 
-        rooms.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(session);
+        long since = sinceId;
+        rooms.compute(roomId, (id, room) -> {
+            if (room == null) {
+                room = new ChatRoom(id, historySize);
+            }
+            room.join(member, since, replayMessages);
+            return room;
+        });
 
         System.out.printf("Chat connected: %s in room %s%n", username, roomId);
     }
@@ -66,39 +171,150 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        // For simplicity we just broadcast the raw JSON string to others in the same room.
-        String payload = message.getPayload();
+        // Messages are JSON objects; the server only adds its id and timestamp
+        JsonNode payload;
+        try {
+            payload = objectMapper.readTree(message.getPayload());
+        } catch (JsonProcessingException e) {
+            payload = null;
+        }
+        if (!(payload instanceof ObjectNode chatMessage)) {
+            System.err.println("Ignoring malformed chat message from " + username);
+            return;
+        }
+
+        broadcastToRoom(roomId, chatMessage);
+    }
+
+    private void broadcastToRoom(String roomId, ObjectNode payload) {
+        ChatRoom room = rooms.get(roomId);
+        if (room == null) return;
+
+        if (room.enqueue(payload)) {
+            batchScheduler.schedule(() -> flush(room), batchWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes the room's batching window, stamps the messages and publishes them on the bus.
+     */
+    private void flush(ChatRoom room) {
+        List<ObjectNode> pending = room.drainPending();
+        if (pending.isEmpty()) return;
+        long started = System.nanoTime();
+        meters.messages.increment(pending.size());
+
+        long[] ids = new long[pending.size()];
+        List<String> batch = new ArrayList<>(pending.size());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = nextId(now);
+            ObjectNode chatMessage = pending.get(i);
+            chatMessage.put("id", ids[i]).put("ts", now);
+            try {
+                batch.add(objectMapper.writeValueAsString(chatMessage));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e); // parsed from JSON, cannot fail
+            }
+        }
 
-        broadcastToRoom(roomId, payload);
+        chatBus.publish(room.roomId, ids, batch);
+        meters.fanOutTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
     }
 
-    private void broadcastToRoom(String roomId, String payload) {
-        Set<WebSocketSession> sessions = rooms.get(roomId);
-        if (sessions == null) return;
+    /**
+     * Records a batch from any node in the room's history and hands one shared frame to every local member.
+     */
+    private void deliver(String roomId, long[] ids, List<String> batch) {
+        lastId.accumulateAndGet(ids[ids.length - 1], Math::max);
+        ChatRoom room = rooms.get(roomId);
+        if (room == null) return; // nobody joined the room on this node
+
+        TextMessage message = new TextMessage(batch.size() == 1
+                ? batch.get(0)
+                : "[" + String.join(",", batch) + "]");
+
+        if (historyBytes.addAndGet(room.publish(ids, batch, message)) > maxHistoryBytes) {
+            trimHistory();
+        }
+    }
 
-        for (WebSocketSession s : sessions) {
-            if (s.isOpen()) {
-                try {
-                    s.sendMessage(new TextMessage(payload));
-                } catch (IOException e) {
-                    System.err.println("Failed to send chat message: " + e.getMessage());
+    /**
+     * Brings history back under the global budget by dropping the oldest messages across all
+     * rooms, so a busy room does not lose its history to the cap while idle rooms keep theirs.
+     */
+    private void trimHistory() {
+        synchronized (historyBytes) {
+            while (historyBytes.get() > maxHistoryBytes) {
+                // The room holding the oldest message gives it up, down to the next room's oldest
+                ChatRoom oldest = null;
+                long oldestId = Long.MAX_VALUE;
+                long nextId = Long.MAX_VALUE;
+                for (ChatRoom room : rooms.values()) {
+                    long id = room.oldestId();
+                    if (id < oldestId) {
+                        nextId = oldestId;
+                        oldestId = id;
+                        oldest = room;
+                    } else if (id < nextId) {
+                        nextId = id;
+                    }
                 }
+                if (oldest == null) break;
+                do {
+                    long freed = oldest.evictOldest();
+                    if (freed == 0) break;
+                    historyBytes.addAndGet(-freed);
+                } while (historyBytes.get() > maxHistoryBytes && oldest.oldestId() <= nextId);
             }
         }
     }
 
+    /**
+     * @return An ID above every ID this node has assigned or seen, ending in this node's ID.
+     */
+    private long nextId(long nowMillis) {
+        int nodes = ChatBus.MAX_NODES;
+        return lastId.updateAndGet(previous ->
+                Math.max(previous / nodes + 1, nowMillis * 1000 / nodes) * nodes + nodeId);
+    }
+
+    /**
+     * Drops rooms, with their history, that have had no members and no messages for the idle timeout.
+     */
+    private void evictIdleRooms() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        for (String roomId : rooms.keySet()) {
+            rooms.computeIfPresent(roomId, (id, room) -> {
+                if (!room.isIdleSince(cutoff)) {
+                    return room;
+                }
+                historyBytes.addAndGet(-room.historyBytes());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return Members of the room connected to this node.
+     */
+    int countMembers(String roomId) {
+        ChatRoom room = rooms.get(roomId);
+        return room == null ? 0 : room.members.size();
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String roomId = (String) session.getAttributes().get("roomId");
         String username = (String) session.getAttributes().get("username");
+        ChatMember member = (ChatMember) session.getAttributes().get("member");
 
-        if (roomId != null) {
-            Set<WebSocketSession> sessions = rooms.get(roomId);
-            if (sessions != null) {
-                sessions.remove(session);
-                if (sessions.isEmpty()) {
-                    rooms.remove(roomId);
-                }
+        if (member != null) {
+            member.markClosed();
+            ChatRoom room = rooms.get(roomId);
+            if (room != null) {
+                // Empty rooms keep their history until they have been idle for a while
+                room.members.remove(member);
             }
         }
 
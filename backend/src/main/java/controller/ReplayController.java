@@ -0,0 +1,66 @@
+package controller;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import service.MjpegPart;
+import service.StreamRecorder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+@RestController
+@CrossOrigin(origins = "http://localhost:3000")
+public class ReplayController {
+
+    private final StreamRecorder streamRecorder;
+    private final ScheduledExecutorService replayScheduler;
+
+    public ReplayController(StreamRecorder streamRecorder,
+                            @Qualifier("replayScheduler") ScheduledExecutorService replayScheduler) {
+        this.streamRecorder = streamRecorder;
+        this.replayScheduler = replayScheduler;
+    }
+
+    /**
+     * Replays a recorded stream as MJPEG, paced by the recorded timestamps.
+     * Parts are written from the memory-mapped segment files; they were stored already framed,
+     * so no re-encoding happens here. The request runs asynchronously (see {@link AsyncReplay}),
+     * so a replay holds no servlet thread while it waits for the next frame.
+     *
+     * @param username The streamer's username/session ID
+     * @param fromMillis Optional epoch millis to start from (defaults to the start of the recording)
+     * @param request HTTP request, switched to async mode
+     * @param response HTTP response stream for MJPEG output
+     */
+    @GetMapping("/replay/{username}")
+    public void replay(@PathVariable String username,
+                       @RequestParam(name = "from", defaultValue = "0") long fromMillis,
+                       HttpServletRequest request,
+                       HttpServletResponse response) throws IOException {
+        List<Path> segments = streamRecorder.isEnabled() ? streamRecorder.listSegments(username) : List.of();
+        if (segments.isEmpty()) {
+            System.out.println("No recording found for: " + username);
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        response.setContentType(MjpegPart.CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
+        response.setHeader(HttpHeaders.PRAGMA, "no-cache");
+
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0); // lives as long as the recording or the client connection
+        new AsyncReplay(username, segments, fromMillis, asyncContext, replayScheduler).start();
+    }
+}
@@ -18,7 +18,14 @@ public class SessionController {
 
     @PostMapping
     public ResponseEntity<Void> createSession(@RequestBody SessionKeyRequest req) {
-        keyRegistry.registerKey(req.getSessionId(), req.getAesKey());
+        try {
+            keyRegistry.registerKey(req.getSessionId(), req.getAesKey(), req.getCipherMode(), req.getKeyId());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            // Registry full of sessions that are still streaming
+            return ResponseEntity.status(503).build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -42,11 +49,19 @@ public class SessionController {
     public static class SessionKeyRequest {
         private String sessionId;
         private String aesKey;
+        private String cipherMode;
+        private int keyId;
 
         public String getSessionId() { return sessionId; }
         public void setSessionId(String sessionId) { this.sessionId = sessionId; }
         public String getAesKey() { return aesKey; }
         public void setAesKey(String aesKey) { this.aesKey = aesKey; }
+        /** Optional: "ecb" (default) or "gcm-chunked" */
+        public String getCipherMode() { return cipherMode; }
+        public void setCipherMode(String cipherMode) { this.cipherMode = cipherMode; }
+        /** Optional: id frames encrypted with this key carry (default 0); a new id rotates the session's key */
+        public int getKeyId() { return keyId; }
+        public void setKeyId(int keyId) { this.keyId = keyId; }
     }
 
     /** Data Transfer Object for session key retrieval responses */
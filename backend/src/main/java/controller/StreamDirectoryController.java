@@ -0,0 +1,58 @@
+package controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import service.StreamDirectory;
+
+/**
+ * Lightweight endpoints for lobby pages, so clients can find streams and show stills
+ * without opening an MJPEG connection. Both are answered from {@link StreamDirectory}'s cache
+ * and carry an ETag, so repeated polls usually end in a bodiless 304.
+ */
+@RestController
+@CrossOrigin(origins = "http://localhost:3000")
+public class StreamDirectoryController {
+
+    private final StreamDirectory streamDirectory;
+
+    public StreamDirectoryController(StreamDirectory streamDirectory) {
+        this.streamDirectory = streamDirectory;
+    }
+
+    /**
+     * Lists the active streams on this node with viewer count, fps and last-frame age.
+     * The list is refreshed once per {@code stream.directory.refresh-ms}.
+     */
+    @GetMapping("/api/streams")
+    public ResponseEntity<byte[]> listStreams() {
+        StreamDirectory.Listing listing = streamDirectory.listing();
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .eTag(listing.etag())
+                .body(listing.json());
+    }
+
+    /**
+     * Serves a recent still of a stream as a JPEG, at most one refresh interval old.
+     * @param username The streamer's username/session ID
+     */
+    @GetMapping("/view/{username}/snapshot.jpg")
+    public ResponseEntity<byte[]> snapshot(@PathVariable String username) {
+        StreamDirectory.Snapshot snapshot = streamDirectory.snapshot(username);
+        if (snapshot == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .cacheControl(CacheControl.noCache())
+                .eTag(snapshot.etag())
+                .lastModified(snapshot.timestampMillis())
+                .body(snapshot.jpeg());
+    }
+}
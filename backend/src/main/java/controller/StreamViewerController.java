@@ -5,40 +5,76 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import service.MjpegPart;
+import service.Rendition;
 import service.StreamManager;
+import service.StreamRelay;
+import service.ViewerRegistry;
 import java.io.IOException;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import java.io.OutputStream;
-
 @RestController
 @CrossOrigin(origins = "http://localhost:3000")
 public class StreamViewerController {
 
     private final StreamManager streamManager;
+    private final ViewerRegistry viewerRegistry;
+    private final StreamRelay streamRelay;
 
-    public StreamViewerController(StreamManager streamManager) {
+    public StreamViewerController(StreamManager streamManager, ViewerRegistry viewerRegistry,
+                                  StreamRelay streamRelay) {
         this.streamManager = streamManager;
+        this.viewerRegistry = viewerRegistry;
+        this.streamRelay = streamRelay;
     }
 
-    private static final String BOUNDARY = "--frameboundary";
-    private static final String CONTENT_TYPE = "multipart/x-mixed-replace; boundary=" + BOUNDARY;
-
     /**
      * Streams decrypted video to viewers via MJPEG over HTTP.
-     * Continuously sends JPEG frames with multipart boundaries until stream ends.
-     * Frame rate is controlled at ~20 FPS (50ms delay between frames).
+     * Sends each new JPEG frame with multipart boundaries as soon as the streamer publishes it,
+     * until the stream ends. Frames published while a write is in progress are skipped in favour
+     * of the newest one.
+     *
+     * The request is switched to Servlet async mode and written with non-blocking I/O
+     * (see {@link AsyncMjpegViewer}), so the servlet thread returns to the pool immediately.
+     * 
+     * With {@code rewind=N} the viewer first receives the last N seconds kept in the stream's
+     * history, then continues live. History is kept at source quality only, so rewind is
+     * ignored for scaled renditions.
+     * 
+     * With {@code rendition=480p} or {@code 240p} the viewer receives frames scaled down on the
+     * server, which costs far less egress than the streamer's original JPEGs ({@code full}).
+     * 
+     * On an edge node ({@code stream.relay.origins}) a stream that is not held locally is
+     * relayed from an origin first, unless the request itself comes from another node's relay.
      * 
      * @param username The streamer's username/session ID
+     * @param rewindSeconds Optional number of seconds of history to replay before going live
+     * @param renditionLabel Optional rendition: {@code full} (default), {@code 480p} or {@code 240p}
+     * @param request HTTP request, put into async mode
      * @param response HTTP response stream for MJPEG output
      */
     @GetMapping("/view/{username}")
-    public void viewStream(@PathVariable String username, HttpServletResponse response) {
+    public void viewStream(@PathVariable String username,
+                           @RequestParam(name = "rewind", defaultValue = "0") int rewindSeconds,
+                           @RequestParam(name = "rendition", defaultValue = "full") String renditionLabel,
+                           HttpServletRequest request, HttpServletResponse response) {
         
         System.out.println("Viewer attempting to connect to stream: " + username);
+
+        Rendition rendition = Rendition.fromLabel(renditionLabel);
+        if (rendition == null) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
         
-        if (!streamManager.isStreaming(username)) {
+        boolean available = request.getHeader(StreamRelay.RELAY_HEADER) == null
+                ? streamRelay.ensureStream(username)
+                : streamManager.isStreaming(username);
+        if (!available) {
             System.out.println("Stream not found or not active for: " + username);
             response.setStatus(HttpStatus.NOT_FOUND.value());
             return;
@@ -47,45 +83,24 @@ public class StreamViewerController {
         System.out.println("Stream is active for: " + username + ", starting MJPEG stream...");
         
         // Configure MJPEG streaming headers with no-cache policy
-        response.setContentType(CONTENT_TYPE);
+        response.setContentType(MjpegPart.CONTENT_TYPE);
         response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache, no-store, must-revalidate");
         response.setHeader(HttpHeaders.PRAGMA, "no-cache");
         response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "http://localhost:3000");
-        
-        try (OutputStream outputStream = response.getOutputStream()) {
-            int frameCount = 0;
-            int emptyFrameCount = 0;
-            while (streamManager.isStreaming(username)) {
-                byte[] frame = streamManager.getLatestFrame(username);
-                
-                if (frame != null && frame.length > 0) {
-                    emptyFrameCount = 0;
-                    
-                    outputStream.write(("\r\n" + BOUNDARY + "\r\n").getBytes());
-                    outputStream.write(("Content-Type: image/jpeg\r\n").getBytes());
-                    outputStream.write(("Content-Length: " + frame.length + "\r\n\r\n").getBytes());
-                    outputStream.write(frame);
-                    outputStream.flush();
-                    frameCount++;
-                    
-                    if (frameCount % 50 == 0) {
-                        System.out.println("Sent " + frameCount + " frames to viewer for: " + username);
-                    }
-                } else {
-                    emptyFrameCount++;
-                    if (emptyFrameCount == 1) {
-                        System.out.println("Waiting for first frame from: " + username);
-                    }
-                }
 
-                Thread.sleep(50); 
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0); // lives as long as the stream or the client connection
+
+        try {
+            AsyncMjpegViewer viewer = new AsyncMjpegViewer(viewerRegistry, username, rendition, asyncContext);
+            if (rewindSeconds > 0 && rendition == Rendition.FULL) {
+                long since = System.currentTimeMillis() - rewindSeconds * 1000L;
+                viewer.preload(streamManager.recentFramesSince(username, since));
             }
-            System.out.println("Stream ended for: " + username + " after " + frameCount + " frames");
+            viewer.start();
         } catch (IOException e) {
             System.out.println("Viewer connection closed for: " + username + " - " + e.getMessage());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.out.println("Stream interrupted for: " + username);
+            asyncContext.complete();
         }
     }
-}
\ No newline at end of file
+}
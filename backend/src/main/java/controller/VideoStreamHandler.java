@@ -1,92 +1,371 @@
 package controller;
 
 import security.AESUtil;
+import security.BinaryFrameHeader;
+import security.SessionKey;
+import service.Frame;
+import service.SealedFrame;
 import service.StreamManager;
-import security.SessionKeyRegistry; 
+import service.StreamMetrics;
+import service.StreamRecorder;
+import security.SessionKeyRegistry;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import javax.crypto.spec.SecretKeySpec; 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles WebSocket connections for encrypted video streaming.
  * Receives encrypted frames from streamers, decrypts using session keys,
  * and forwards to StreamManager for viewer distribution.
+ *
+ * The wire format is negotiated during the handshake with the {@code format} query parameter:
+ * {@code text} (default) keeps the original {@code AES_ENC_PREFIX::xxxxxxxx::<base64>} messages,
+ * {@code binary} expects {@link BinaryFrameHeader} framed raw ciphertext in binary messages.
+ * The cipher mode is fixed when the key is registered; binary frames in any other mode are
+ * rejected, and chunked GCM is only available in the binary format.
+ *
+ * Every frame names the key it was encrypted with (the text key chunk or the binary header's
+ * key id). The session's keys are bound to the connection on its first frame and released when
+ * it closes, so keys can be rotated mid-stream and no registry lookup happens per frame.
+ *
+ * With {@code stream.decrypt.lazy.enabled} the handler only validates a frame, checks its key and
+ * hands it over still encrypted ({@link StreamManager#offerSealed}); decoding and decryption
+ * happen later on the decrypt pool, and only for frames a reader needs.
  */
 @Component
-public class VideoStreamHandler extends TextWebSocketHandler {
+public class VideoStreamHandler extends AbstractWebSocketHandler {
+
+    private static final String FORMAT_TEXT = "text";
+    private static final String FORMAT_BINARY = "binary";
 
     private final StreamManager streamManager;
-    private final AESUtil aesUtil; 
-    private final SessionKeyRegistry keyRegistry; 
+    private final AESUtil aesUtil;
+    private final SessionKeyRegistry keyRegistry;
+    private final StreamRecorder streamRecorder;
+    private final StreamMetrics streamMetrics;
 
-    public VideoStreamHandler(StreamManager streamManager, AESUtil aesUtil, SessionKeyRegistry keyRegistry) {
+    public VideoStreamHandler(StreamManager streamManager, AESUtil aesUtil, SessionKeyRegistry keyRegistry,
+                              StreamRecorder streamRecorder, StreamMetrics streamMetrics) {
         this.streamManager = streamManager;
-        this.aesUtil = aesUtil; 
-        this.keyRegistry = keyRegistry; 
+        this.aesUtil = aesUtil;
+        this.keyRegistry = keyRegistry;
+        this.streamRecorder = streamRecorder;
+        this.streamMetrics = streamMetrics;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String query = session.getUri().getQuery();
-        String username = UriComponentsBuilder.fromUriString("?" + query)
+        var params = UriComponentsBuilder.fromUriString("?" + query)
                 .build()
-                .getQueryParams()
-                .getFirst("username");
-        
+                .getQueryParams();
+        String username = params.getFirst("username");
+
         if (username == null || username.trim().isEmpty()) {
             session.close(CloseStatus.BAD_DATA.withReason("Username required."));
             return;
         }
 
-        session.getAttributes().put("username", username); 
+        String format = params.getFirst("format");
+        if (format == null || format.isBlank()) {
+            format = FORMAT_TEXT;
+        }
+        if (!FORMAT_TEXT.equals(format) && !FORMAT_BINARY.equals(format)) {
+            session.close(CloseStatus.BAD_DATA.withReason("Unsupported format: " + format));
+            return;
+        }
+
+        session.getAttributes().put("username", username);
+        session.getAttributes().put("format", format);
+        session.getAttributes().put("lastSequence", new AtomicLong(-1));
+        session.getAttributes().put("meters", streamMetrics.registerStream(username));
         streamManager.registerStream(username);
-        
-        System.out.println("New Stream Established: " + username + " (ID: " + session.getId() + ")");
+        streamRecorder.startRecording(username);
+
+        System.out.println("New Stream Established: " + username + " (ID: " + session.getId() + ", format: " + format + ")");
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        if (!FORMAT_TEXT.equals(session.getAttributes().get("format"))) {
+            closeQuietly(session, CloseStatus.NOT_ACCEPTABLE.withReason("Text frames not negotiated"));
+            return;
+        }
+
         String sessionIdFromWs = (String) session.getAttributes().get("username");
+        try {
+            String encryptedFrameString = message.getPayload();
+            SessionKey keyForSession = resolveKey(session, sessionIdFromWs, AESUtil.textKeyId(encryptedFrameString));
+            if (keyForSession == null) {
+                return;
+            }
+            if (keyForSession.cipherMode() != BinaryFrameHeader.MODE_ECB) {
+                closeQuietly(session, CloseStatus.NOT_ACCEPTABLE.withReason("Cipher mode requires binary frames"));
+                return;
+            }
 
-        if (sessionIdFromWs == null) {
-             System.err.println("Decryption failed: Missing session ID (username) in attributes.");
-            try { session.close(CloseStatus.PROTOCOL_ERROR.withReason("Missing Session ID")); } catch (IOException ignored) {}
-            return;
+            if (streamManager.isLazyDecryption()) {
+                // The String is immutable, so it is kept as is and even the Base64 decoding is deferred
+                offerSealed(session, sessionIdFromWs, encryptedFrameString.length() * 3 / 4,
+                        encryptedFrameString.length(), null, (output, offset) -> aesUtil.decryptInto(
+                                ByteBuffer.wrap(aesUtil.decodeTextMessage(encryptedFrameString)),
+                                keyForSession, output, offset));
+                return;
+            }
+
+            ByteBuffer ciphertext = ByteBuffer.wrap(aesUtil.decodeTextMessage(encryptedFrameString));
+            decryptAndPublish(session, sessionIdFromWs, ciphertext.remaining(),
+                    (output, offset) -> aesUtil.decryptInto(ciphertext, keyForSession, output, offset));
+
+        } catch (Exception e) {
+            System.err.println("Decryption failed for " + sessionIdFromWs + ": " + e.getMessage());
+            closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Decryption Error"));
         }
+    }
 
-        SecretKeySpec keyForSession = keyRegistry.getKey(sessionIdFromWs); 
-        
-        if (keyForSession == null) {
-            System.err.println("Decryption failed: No key found for session ID: " + sessionIdFromWs);
-            try { session.close(CloseStatus.PROTOCOL_ERROR.withReason("Missing Encryption Key")); } catch (IOException ignored) {}
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        if (!FORMAT_BINARY.equals(session.getAttributes().get("format"))) {
+            closeQuietly(session, CloseStatus.NOT_ACCEPTABLE.withReason("Binary frames not negotiated"));
             return;
         }
 
+        String sessionIdFromWs = (String) session.getAttributes().get("username");
         try {
-            String encryptedFrameString = message.getPayload();
-            byte[] decryptedFrameBytes = aesUtil.decrypt(encryptedFrameString, keyForSession); 
-            streamManager.updateFrame(sessionIdFromWs, decryptedFrameBytes); 
-            
-            // System.out.printf("Received and Decrypted Frame (%d bytes) from %s%n", decryptedFrameBytes.length, sessionIdFromWs);
+            ByteBuffer frame = message.getPayload();
+            BinaryFrameHeader.validate(frame);
+            SessionKey keyForSession = resolveKey(session, sessionIdFromWs, BinaryFrameHeader.keyId(frame));
+            if (keyForSession == null) {
+                return;
+            }
+            if (BinaryFrameHeader.mode(frame) != keyForSession.cipherMode()) {
+                closeQuietly(session, CloseStatus.NOT_ACCEPTABLE.withReason("Cipher mode not negotiated"));
+                return;
+            }
+
+            // Frames that arrive late or twice are superseded by what viewers already have
+            long sequence = BinaryFrameHeader.sequence(frame);
+            AtomicLong lastSequence = (AtomicLong) session.getAttributes().get("lastSequence");
+            if (sequence <= lastSequence.get()) {
+                return;
+            }
+            lastSequence.set(sequence);
+
+            boolean chunked = BinaryFrameHeader.mode(frame) == BinaryFrameHeader.MODE_GCM_CHUNKED;
+            byte[] nonce = null;
+            int chunkSize = 0;
+            if (chunked) {
+                nonce = new byte[BinaryFrameHeader.GCM_NONCE_LENGTH];
+                frame.get(BinaryFrameHeader.ivOffset(frame), nonce);
+                chunkSize = BinaryFrameHeader.chunkSize(frame);
+            }
+            BinaryFrameHeader.skipHeader(frame);
+
+            // The container reuses the message buffer, so a frame decrypted later needs its own copy
+            Frame copy = null;
+            ByteBuffer ciphertext = frame;
+            if (streamManager.isLazyDecryption()) {
+                copy = streamManager.allocateFrame(frame.remaining());
+                copy.setLength(frame.remaining());
+                frame.get(frame.position(), copy.array(), copy.dataOffset(), copy.length());
+                ciphertext = ByteBuffer.wrap(copy.array(), copy.dataOffset(), copy.length());
+            }
+
+            Decryption decryption;
+            if (chunked) {
+                byte[] frameNonce = nonce;
+                int frameChunkSize = chunkSize;
+                ByteBuffer chunks = ciphertext;
+                decryption = (output, offset) -> aesUtil.decryptChunkedInto(chunks, keyForSession.spec(),
+                        sequence, frameNonce, frameChunkSize, output, offset);
+            } else {
+                ByteBuffer blocks = ciphertext;
+                decryption = (output, offset) -> aesUtil.decryptInto(blocks, keyForSession, output, offset);
+            }
+
+            if (copy != null) {
+                offerSealed(session, sessionIdFromWs, copy.length(), copy.length(), copy, decryption);
+            } else {
+                decryptAndPublish(session, sessionIdFromWs, ciphertext.remaining(), decryption);
+            }
 
         } catch (Exception e) {
             System.err.println("Decryption failed for " + sessionIdFromWs + ": " + e.getMessage());
+            closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Decryption Error"));
+        }
+    }
+
+    /**
+     * Decrypts one frame's ciphertext into a caller-supplied array.
+     */
+    @FunctionalInterface
+    private interface Decryption {
+        /** @return The number of plaintext bytes written */
+        int decryptInto(byte[] output, int outputOffset) throws Exception;
+    }
+
+    /**
+     * Decrypts into a pooled frame and hands it to the StreamManager, returning the buffer to the pool on failure.
+     * @param ciphertextLength Upper bound on the plaintext size, used to size the frame
+     */
+    private void decryptAndPublish(WebSocketSession session, String username, int ciphertextLength,
+                                   Decryption decryption) throws Exception {
+        Frame frame = streamManager.allocateFrame(ciphertextLength);
+        long decryptStarted = System.nanoTime();
+        try {
+            frame.setLength(decryption.decryptInto(frame.array(), frame.dataOffset()));
+        } catch (Exception e) {
+            frame.release();
+            throw e;
+        }
+        StreamMetrics.StreamMeters meters = (StreamMetrics.StreamMeters) session.getAttributes().get("meters");
+        meters.recordIngest(frame.length(), System.nanoTime() - decryptStarted);
+        if (!streamManager.updateFrame(username, frame)) {
+            meters.recordDuplicate();
+        }
+    }
+
+    /**
+     * Hands a frame over for lazy decryption and counts its arrival.
+     * @param plaintextBound Upper bound on the plaintext size, used to size the frame it is decrypted into
+     * @param receivedBytes Bytes received for the frame
+     * @param ciphertextCopy Pooled copy of the ciphertext, released once the frame is opened or dropped; may be null
+     */
+    private void offerSealed(WebSocketSession session, String username, int plaintextBound, int receivedBytes,
+                             Frame ciphertextCopy, Decryption decryption) {
+        StreamMetrics.StreamMeters meters = (StreamMetrics.StreamMeters) session.getAttributes().get("meters");
+        meters.recordSealed(receivedBytes);
+        streamManager.offerSealed(username, new PendingFrame(session, username, meters, plaintextBound,
+                ciphertextCopy, decryption));
+    }
+
+    /**
+     * A frame accepted from the streamer and not decrypted yet; see {@link SealedFrame}.
+     */
+    private final class PendingFrame implements SealedFrame {
+        private final WebSocketSession session;
+        private final String username;
+        private final StreamMetrics.StreamMeters meters;
+        private final int plaintextBound;
+        private final Frame ciphertextCopy;
+        private final Decryption decryption;
+
+        PendingFrame(WebSocketSession session, String username, StreamMetrics.StreamMeters meters,
+                     int plaintextBound, Frame ciphertextCopy, Decryption decryption) {
+            this.session = session;
+            this.username = username;
+            this.meters = meters;
+            this.plaintextBound = plaintextBound;
+            this.ciphertextCopy = ciphertextCopy;
+            this.decryption = decryption;
+        }
+
+        @Override
+        public Frame open() throws Exception {
+            Frame frame = streamManager.allocateFrame(plaintextBound);
+            long decryptStarted = System.nanoTime();
             try {
-                session.close(CloseStatus.PROTOCOL_ERROR.withReason("Decryption Error"));
-            } catch (IOException ignored) {}
+                frame.setLength(decryption.decryptInto(frame.array(), frame.dataOffset()));
+            } catch (Exception e) {
+                frame.release();
+                throw e;
+            } finally {
+                freeCiphertext();
+            }
+            meters.recordDecrypt(System.nanoTime() - decryptStarted);
+            return frame;
+        }
+
+        @Override
+        public void published(boolean published) {
+            if (!published) {
+                meters.recordDuplicate();
+            }
+        }
+
+        @Override
+        public void failed(Exception e) {
+            System.err.println("Decryption failed for " + username + ": " + e.getMessage());
+            closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Decryption Error"));
         }
+
+        @Override
+        public void discard() {
+            freeCiphertext();
+            meters.recordUndecrypted();
+        }
+
+        private void freeCiphertext() {
+            if (ciphertextCopy != null) {
+                ciphertextCopy.release();
+            }
+        }
+    }
+
+    /**
+     * Selects the key a frame names from the keys bound to this connection, binding them on the
+     * first frame, and again if the bound keys were evicted and the streamer has registered new ones.
+     * Closes the session if the streamer has no keys or the key id is unknown or expired.
+     * @return The key, or null if the session was closed.
+     */
+    private SessionKey resolveKey(WebSocketSession session, String sessionIdFromWs, int keyId) {
+        if (sessionIdFromWs == null) {
+            System.err.println("Decryption failed: Missing session ID (username) in attributes.");
+            closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Missing Session ID"));
+            return null;
+        }
+
+        SessionKeyRegistry.Entry keys = (SessionKeyRegistry.Entry) session.getAttributes().get("keys");
+        if (keys == null) {
+            keys = keyRegistry.attach(sessionIdFromWs);
+            if (keys == null) {
+                System.err.println("Decryption failed: No key found for session ID: " + sessionIdFromWs);
+                closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Missing Encryption Key"));
+                return null;
+            }
+            session.getAttributes().put("keys", keys);
+        }
+
+        SessionKey keyForSession = keys.forKeyId(keyId);
+        if (keyForSession == null && keys.isRevoked()) {
+            // The bound keys expired under the connection; bind the streamer's re-registered keys once
+            keyRegistry.detach(sessionIdFromWs, keys);
+            keys = keyRegistry.attach(sessionIdFromWs);
+            if (keys == null) {
+                session.getAttributes().remove("keys");
+            } else {
+                session.getAttributes().put("keys", keys);
+                keyForSession = keys.forKeyId(keyId);
+            }
+        }
+        if (keyForSession == null) {
+            System.err.println("Decryption failed: Key " + keyId + " not valid for session ID: " + sessionIdFromWs);
+            closeQuietly(session, CloseStatus.PROTOCOL_ERROR.withReason("Unknown Encryption Key"));
+            return null;
+        }
+        return keyForSession;
+    }
+
+    private void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try { session.close(status); } catch (IOException ignored) {}
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         String username = (String) session.getAttributes().get("username");
         if (username != null) {
-            streamManager.removeStream(username); 
+            streamManager.removeStream(username);
+            streamMetrics.removeStream(username, (StreamMetrics.StreamMeters) session.getAttributes().get("meters"));
+            SessionKeyRegistry.Entry keys = (SessionKeyRegistry.Entry) session.getAttributes().get("keys");
+            if (keys != null) {
+                keyRegistry.detach(username, keys);
+            }
             System.out.println("Stream Stopped and Removed: " + username);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package controller;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import service.Rendition;
+import service.StreamManager;
+import service.StreamRelay;
+import service.ViewerRegistry;
+
+/**
+ * WebSocket alternative to the MJPEG endpoint: {@code /watch?username=...}.
+ *
+ * Frames come from the same {@link StreamManager} publication path as {@code /view/{username}}
+ * and follow the same latest-frame-wins and eviction policy, but each one is delivered as a
+ * binary message carrying its sequence number, publish time and rendition
+ * (see {@link service.WatchHeader} for the layout). Clients can therefore measure latency and see
+ * exactly which frames they skipped, and no multipart boundary is sent per frame.
+ *
+ * Optional query parameters mirror the MJPEG endpoint: {@code rendition=480p|240p} and
+ * {@code rewind=N} (full rendition only). Messages from the client are ignored.
+ */
+@Component
+public class WatchWebSocketHandler extends AbstractWebSocketHandler {
+
+    private final StreamManager streamManager;
+    private final ViewerRegistry viewerRegistry;
+    private final StreamRelay streamRelay;
+
+    public WatchWebSocketHandler(StreamManager streamManager, ViewerRegistry viewerRegistry, StreamRelay streamRelay) {
+        this.streamManager = streamManager;
+        this.viewerRegistry = viewerRegistry;
+        this.streamRelay = streamRelay;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        var params = UriComponentsBuilder.fromUri(session.getUri())
+                .build()
+                .getQueryParams();
+        String username = params.getFirst("username");
+        if (username == null || username.isBlank()) {
+            session.close(CloseStatus.BAD_DATA.withReason("Username required."));
+            return;
+        }
+
+        String renditionLabel = params.getFirst("rendition");
+        Rendition rendition = Rendition.fromLabel(renditionLabel == null ? Rendition.FULL.label() : renditionLabel);
+        if (rendition == null) {
+            session.close(CloseStatus.BAD_DATA.withReason("Unsupported rendition: " + renditionLabel));
+            return;
+        }
+
+        int rewindSeconds;
+        try {
+            String rewind = params.getFirst("rewind");
+            rewindSeconds = rewind == null ? 0 : Integer.parseInt(rewind);
+        } catch (NumberFormatException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("Invalid rewind."));
+            return;
+        }
+
+        if (!streamRelay.ensureStream(username)) {
+            System.out.println("Stream not found or not active for: " + username);
+            session.close(CloseStatus.NORMAL.withReason("Stream not active."));
+            return;
+        }
+
+        WebSocketViewer viewer = new WebSocketViewer(viewerRegistry, username, rendition, session);
+        session.getAttributes().put("viewer", viewer);
+        if (rewindSeconds > 0 && rendition == Rendition.FULL) {
+            long since = System.currentTimeMillis() - rewindSeconds * 1000L;
+            viewer.preload(streamManager.recentFramesSince(username, since));
+        }
+        if (viewer.start()) {
+            System.out.println("WebSocket viewer joined " + username + " (" + rendition.label() + ", ID: " + session.getId() + ")");
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        WebSocketViewer viewer = (WebSocketViewer) session.getAttributes().get("viewer");
+        if (viewer != null) {
+            viewer.close("connection closed (" + status.getCode() + ")");
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        WebSocketViewer viewer = (WebSocketViewer) session.getAttributes().get("viewer");
+        if (viewer != null) {
+            viewer.close("transport error - " + exception.getMessage());
+        }
+    }
+}
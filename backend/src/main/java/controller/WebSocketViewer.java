@@ -0,0 +1,139 @@
+package controller;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendResult;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.WebSocketSession;
+import service.Frame;
+import service.Rendition;
+import service.ViewerRegistry;
+import service.ViewerSession;
+import service.WatchHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One viewer on the {@code /watch} WebSocket endpoint.
+ *
+ * Every frame is one binary message: the header written once per frame on publish (see
+ * {@link WatchHeader} for the layout) followed by the JPEG. The message is a read-only view of
+ * the frame's shared buffer, so no viewer copies the JPEG; the viewer keeps its reference to the
+ * frame until the container has written it.
+ *
+ * The frames this viewer has skipped are the only per-viewer value, so they are not in the
+ * header: whenever the count has changed, at most once per {@link #STATS_INTERVAL_MS}, a text
+ * message {@code {"skipped":N}} goes out after a frame.
+ *
+ * Messages go out with the container's asynchronous send, one at a time: while a message is
+ * in flight the session reports itself as not writable, so newer frames replace the pending
+ * one (see {@link ViewerSession}) and the completion of the send triggers the next drain.
+ */
+class WebSocketViewer extends ViewerSession {
+
+    static final long STATS_INTERVAL_MS = 1000;
+
+    private final WebSocketSession session;
+    private final RemoteEndpoint.Async remote;
+    private volatile boolean sending;
+    private volatile boolean streamEnded;
+    private volatile Frame inFlight;
+    private long reportedSkipped;
+    private long statsSentNanos;
+
+    WebSocketViewer(ViewerRegistry registry, String username, Rendition rendition, WebSocketSession session) {
+        super(registry, username, rendition);
+        this.session = session;
+        // Spring's own send is blocking; the container's async remote lets a slow viewer hold no thread
+        this.remote = ((NativeWebSocketSession) session).getNativeSession(jakarta.websocket.Session.class).getAsyncRemote();
+    }
+
+    @Override
+    protected boolean isWritable() {
+        return !sending && session.isOpen();
+    }
+
+    /**
+     * Starts an asynchronous send of the frame's shared message, keeping a reference to the
+     * frame until it completes.
+     */
+    @Override
+    protected void send(Frame frame) throws IOException {
+        if (!frame.tryRetain()) {
+            return;
+        }
+        inFlight = frame;
+        sending = true;
+        try {
+            remote.sendBinary(ByteBuffer.wrap(frame.array(), frame.watchOffset(), frame.watchLength()).asReadOnlyBuffer(),
+                    this::onFrameSent);
+        } catch (RuntimeException e) {
+            releaseInFlight();
+            sending = false;
+            throw e;
+        }
+    }
+
+    private void onFrameSent(SendResult result) {
+        releaseInFlight();
+        if (!result.isOK()) {
+            onSendComplete(result);
+            return;
+        }
+        long skipped = getDroppedFrames();
+        long now = System.nanoTime();
+        if (skipped != reportedSkipped && now - statsSentNanos >= STATS_INTERVAL_MS * 1_000_000) {
+            reportedSkipped = skipped;
+            statsSentNanos = now;
+            try {
+                remote.sendText("{\"skipped\":" + skipped + "}", this::onSendComplete);
+                return;
+            } catch (RuntimeException e) {
+                sending = false;
+                close("write failed - " + e.getMessage());
+                return;
+            }
+        }
+        onSendComplete(result);
+    }
+
+    private void onSendComplete(SendResult result) {
+        sending = false;
+        if (!result.isOK()) {
+            Throwable cause = result.getException();
+            close("write failed - " + (cause == null ? "unknown" : cause.getMessage()));
+            return;
+        }
+        scheduleDrain();
+    }
+
+    private void releaseInFlight() {
+        Frame frame = inFlight;
+        inFlight = null;
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    @Override
+    public void onStreamEnded() {
+        streamEnded = true;
+        super.onStreamEnded();
+    }
+
+    @Override
+    protected int wireLength(Frame frame) {
+        return frame.watchLength();
+    }
+
+    @Override
+    protected void closeTransport() {
+        try {
+            // Anything but the end of the stream means the server gave up on this viewer (lag, stall, error)
+            session.close(streamEnded ? CloseStatus.NORMAL : CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // Connection already gone
+        }
+    }
+}
@@ -1,24 +1,74 @@
 package security;
 
+import jakarta.annotation.PreDestroy;
+import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * Utility class for AES decryption of video frames.
  * Handles frames encrypted with AES/ECB/PKCS7 padding from CryptoJS.
+ *
+ * Cipher instances are cached per thread and only re-initialised when the key changes,
+ * so the provider lookup and key schedule are not repeated for every frame.
+ *
+ * Frames in chunked GCM mode (see {@link BinaryFrameHeader}) are decrypted chunk by chunk;
+ * frames of at least {@code stream.decrypt.parallel-threshold-bytes} are split across a
+ * dedicated ForkJoin pool so one large frame uses several cores.
  */
 @Component
 public class AESUtil {
 
     private static final String ALGORITHM = "AES";
     private static final String ENCRYPTION_PREFIX = "AES_ENC_PREFIX::";
+    private static final int KEY_CHUNK_LENGTH = 8;
+    private static final int BLOCK_SIZE = 16;
 
-    private static final Pattern ENCRYPTED_MESSAGE_PATTERN
-            = Pattern.compile("^" + ENCRYPTION_PREFIX.replace("::", "::") + ".{8}::(.*)$");
+    /**
+     * The padding is stripped by hand (see {@link #unpad}) because the JDK's PKCS5 decrypt
+     * path allocates a temporary array the size of the frame on every doFinal.
+     */
+    private static final String TRANSFORMATION = "AES/ECB/NoPadding";
+
+    private static final ThreadLocal<CachedCipher> CIPHERS = ThreadLocal.withInitial(CachedCipher::new);
+
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_TAG_LENGTH = 16;
+    /** sequence (8) + chunk index (4) + final-chunk flag (1) */
+    private static final int GCM_AAD_LENGTH = 13;
+
+    private static final ThreadLocal<GcmCipher> GCM_CIPHERS = ThreadLocal.withInitial(GcmCipher::new);
+
+    private final ForkJoinPool decryptPool;
+    private final int parallelThresholdBytes;
+
+    public AESUtil() {
+        this(Runtime.getRuntime().availableProcessors(), 262144);
+    }
+
+    @Autowired
+    public AESUtil(@Value("${stream.decrypt.parallelism:0}") int parallelism,
+                   @Value("${stream.decrypt.parallel-threshold-bytes:262144}") int parallelThresholdBytes) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.decryptPool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("frame-decrypt-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.parallelThresholdBytes = parallelThresholdBytes;
+    }
 
     /**
      * Decrypts an encrypted message string using the provided AES key.
@@ -29,22 +79,290 @@ public class AESUtil {
      * @throws Exception If decryption fails or message format is incorrect
      */
     public byte[] decrypt(String encryptedMessage, SecretKeySpec secretKey) throws Exception {
+        byte[] encryptedBytes = decodeTextMessage(encryptedMessage);
+        byte[] plaintext = new byte[encryptedBytes.length];
+        int length = decryptInto(ByteBuffer.wrap(encryptedBytes), secretKey, plaintext, 0);
+        return length == plaintext.length ? plaintext : Arrays.copyOf(plaintext, length);
+    }
+
+    /**
+     * Decrypts raw ciphertext received through the binary ingest protocol.
+     * Reads directly from the message buffer, so no Base64 or String copy of the frame is made.
+     * @param ciphertext Buffer positioned at the first ciphertext byte; its remaining bytes are decrypted
+     * @param secretKey The SecretKeySpec object retrieved from the registry
+     * @return The decrypted raw byte array (JPEG frame data)
+     * @throws Exception If decryption fails (e.g. wrong key or bad padding)
+     */
+    public byte[] decrypt(ByteBuffer ciphertext, SecretKeySpec secretKey) throws Exception {
+        byte[] plaintext = new byte[ciphertext.remaining()];
+        int length = decryptInto(ciphertext, secretKey, plaintext, 0);
+        return length == plaintext.length ? plaintext : Arrays.copyOf(plaintext, length);
+    }
+
+    /**
+     * Allocation-free decrypt: writes the plaintext into a caller-supplied (typically pooled) array.
+     * The output needs room for {@code ciphertext.remaining()} bytes; the padding is removed afterwards.
+     * @param ciphertext Buffer positioned at the first ciphertext byte; consumed entirely
+     * @param secretKey The SecretKeySpec object retrieved from the registry
+     * @param output Destination array
+     * @param outputOffset Index in {@code output} where the plaintext starts
+     * @return The number of plaintext bytes written
+     * @throws GeneralSecurityException If the ciphertext is not block aligned or the padding is invalid
+     */
+    public int decryptInto(ByteBuffer ciphertext, SecretKeySpec secretKey, byte[] output, int outputOffset)
+            throws GeneralSecurityException {
+        int length = ciphertext.remaining();
+        if (length == 0 || length % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Ciphertext length is not a multiple of the AES block size.");
+        }
+
+        return decryptBlocks(CIPHERS.get().forKey(secretKey), ciphertext, output, outputOffset);
+    }
+
+    /**
+     * Decrypts ECB ciphertext with the context prepared when the session key was registered,
+     * so no cipher lookup or key schedule happens per frame.
+     * @param ciphertext Buffer positioned at the first ciphertext byte; consumed entirely
+     * @param key The session key the frame names; must be an ECB key
+     * @param output Destination array with room for {@code ciphertext.remaining()} bytes
+     * @param outputOffset Index in {@code output} where the plaintext starts
+     * @return The number of plaintext bytes written
+     * @throws GeneralSecurityException If the ciphertext is not block aligned or the padding is invalid
+     */
+    public int decryptInto(ByteBuffer ciphertext, SessionKey key, byte[] output, int outputOffset)
+            throws GeneralSecurityException {
+        int length = ciphertext.remaining();
+        if (length == 0 || length % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Ciphertext length is not a multiple of the AES block size.");
+        }
+        if (key.ecbCipher() == null) {
+            throw new IllegalArgumentException("Key " + key.keyId() + " is not an ECB key.");
+        }
+        synchronized (key) {
+            return decryptBlocks(key.ecbCipher(), ciphertext, output, outputOffset);
+        }
+    }
+
+    private static int decryptBlocks(Cipher cipher, ByteBuffer ciphertext, byte[] output, int outputOffset)
+            throws GeneralSecurityException {
+        int length = ciphertext.remaining();
+        if (ciphertext.hasArray()) {
+            cipher.doFinal(ciphertext.array(), ciphertext.arrayOffset() + ciphertext.position(), length,
+                    output, outputOffset);
+            ciphertext.position(ciphertext.limit());
+        } else {
+            cipher.doFinal(ciphertext, ByteBuffer.wrap(output, outputOffset, length));
+        }
+        return unpad(output, outputOffset, length);
+    }
+
+    /**
+     * Decrypts a chunked AES/GCM frame into a caller-supplied array, verifying every chunk's tag.
+     * Large frames are decrypted in parallel; the call returns once all chunks are done.
+     * @param ciphertext Buffer positioned at the first chunk; consumed entirely
+     * @param secretKey The SecretKeySpec object retrieved from the registry
+     * @param sequence The frame's sequence number, authenticated with every chunk
+     * @param nonce Base nonce of the frame ({@link BinaryFrameHeader#GCM_NONCE_LENGTH} bytes)
+     * @param chunkSize Plaintext bytes per chunk
+     * @param output Destination array, with room for {@code ciphertext.remaining()} bytes
+     * @param outputOffset Index in {@code output} where the plaintext starts
+     * @return The number of plaintext bytes written
+     * @throws GeneralSecurityException If any chunk fails authentication
+     */
+    public int decryptChunkedInto(ByteBuffer ciphertext, SecretKeySpec secretKey, long sequence, byte[] nonce,
+                                  int chunkSize, byte[] output, int outputOffset) throws GeneralSecurityException {
+        int length = ciphertext.remaining();
+        int stride = chunkSize + GCM_TAG_LENGTH;
+        int chunks = (length + stride - 1) / stride;
+        if (chunks == 0 || length - (chunks - 1) * stride <= GCM_TAG_LENGTH) {
+            throw new IllegalArgumentException("Chunked ciphertext is truncated.");
+        }
+
+        ChunkRange all = new ChunkRange(ciphertext, secretKey, sequence, nonce, chunkSize, chunks,
+                output, outputOffset, 0, chunks);
+        if (chunks == 1 || length < parallelThresholdBytes || decryptPool.getParallelism() == 1) {
+            all.decrypt();
+        } else {
+            try {
+                decryptPool.invoke(all);
+            } catch (ChunkFailure e) {
+                throw e.getCause();
+            }
+        }
+        ciphertext.position(ciphertext.limit());
+        return length - chunks * GCM_TAG_LENGTH;
+    }
+
+    /**
+     * A run of chunks of one frame, split in halves until each task decrypts a single chunk.
+     */
+    private static final class ChunkRange extends RecursiveAction {
+        private final ByteBuffer ciphertext;
+        private final SecretKeySpec key;
+        private final long sequence;
+        private final byte[] nonce;
+        private final int chunkSize;
+        private final int chunks;
+        private final byte[] output;
+        private final int outputOffset;
+        private final int from;
+        private final int to;
+
+        ChunkRange(ByteBuffer ciphertext, SecretKeySpec key, long sequence, byte[] nonce, int chunkSize, int chunks,
+                   byte[] output, int outputOffset, int from, int to) {
+            this.ciphertext = ciphertext;
+            this.key = key;
+            this.sequence = sequence;
+            this.nonce = nonce;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+            this.output = output;
+            this.outputOffset = outputOffset;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(split(from, middle), split(middle, to));
+                return;
+            }
+            try {
+                decrypt();
+            } catch (GeneralSecurityException e) {
+                throw new ChunkFailure(e);
+            }
+        }
+
+        private ChunkRange split(int start, int end) {
+            return new ChunkRange(ciphertext, key, sequence, nonce, chunkSize, chunks, output, outputOffset, start, end);
+        }
+
+        void decrypt() throws GeneralSecurityException {
+            GcmCipher gcm = GCM_CIPHERS.get();
+            int stride = chunkSize + GCM_TAG_LENGTH;
+            int start = ciphertext.position();
+            int end = ciphertext.limit();
+            for (int chunk = from; chunk < to; chunk++) {
+                int chunkStart = start + chunk * stride;
+                int chunkEnd = Math.min(chunkStart + stride, end);
+                ByteBuffer input = ciphertext.duplicate().limit(chunkEnd).position(chunkStart);
+                ByteBuffer plaintext = ByteBuffer.wrap(output, outputOffset + chunk * chunkSize,
+                        chunkEnd - chunkStart - GCM_TAG_LENGTH);
+                gcm.init(key, nonce, sequence, chunk, chunk == chunks - 1).doFinal(input, plaintext);
+            }
+        }
+    }
+
+    /** Carries a chunk's authentication failure out of the ForkJoin pool. */
+    private static final class ChunkFailure extends RuntimeException {
+        ChunkFailure(GeneralSecurityException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized GeneralSecurityException getCause() {
+            return (GeneralSecurityException) super.getCause();
+        }
+    }
+
+    /**
+     * Per-thread GCM cipher with reusable nonce and additional-data buffers.
+     */
+    private static final class GcmCipher {
+        private final byte[] iv = new byte[BinaryFrameHeader.GCM_NONCE_LENGTH];
+        private final ByteBuffer aad = ByteBuffer.allocate(GCM_AAD_LENGTH);
+        private Cipher cipher;
+
+        Cipher init(SecretKeySpec key, byte[] nonce, long sequence, int chunk, boolean last)
+                throws GeneralSecurityException {
+            if (cipher == null) {
+                cipher = Cipher.getInstance(GCM_TRANSFORMATION);
+            }
+            System.arraycopy(nonce, 0, iv, 0, iv.length);
+            for (int i = 0; i < 4; i++) {
+                iv[iv.length - 1 - i] ^= (byte) (chunk >>> (8 * i));
+            }
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+            aad.clear();
+            aad.putLong(sequence).putInt(chunk).put((byte) (last ? 1 : 0));
+            cipher.updateAAD(aad.array());
+            return cipher;
+        }
+    }
+
+    /**
+     * Extracts and Base64-decodes the ciphertext of a text-format frame.
+     * @param encryptedMessage The message string starting with AES_ENC_PREFIX::xxxxxxxx::Base64Data
+     * @return The raw ciphertext
+     */
+    public byte[] decodeTextMessage(String encryptedMessage) {
         if (!encryptedMessage.startsWith(ENCRYPTION_PREFIX)) {
             throw new IllegalArgumentException("Message missing AES encryption prefix.");
         }
 
-        Matcher matcher = ENCRYPTED_MESSAGE_PATTERN.matcher(encryptedMessage);
-        if (!matcher.matches()) {
+        int separator = ENCRYPTION_PREFIX.length() + KEY_CHUNK_LENGTH;
+        if (!encryptedMessage.startsWith("::", separator)) {
             throw new IllegalArgumentException("Message format is corrupted or missing the key prefix.");
         }
 
-        String base64Data = matcher.group(1);
-        byte[] encryptedBytes = Base64.getDecoder().decode(base64Data);
+        String base64Data = encryptedMessage.substring(separator + 2);
+        return Base64.getDecoder().decode(base64Data);
+    }
 
-        // AES/ECB/PKCS5Padding is equivalent to AES/ECB/PKCS7Padding used by the CryptoJS client
-        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, secretKey);
+    /**
+     * Reads the key id from the key chunk of a text-format frame ({@code AES_ENC_PREFIX::xxxxxxxx::...},
+     * eight hex digits). Clients that predate key rotation send {@code 00000000}, i.e. key id 0.
+     * @throws IllegalArgumentException If the key chunk is not hexadecimal
+     */
+    public static int textKeyId(String encryptedMessage) {
+        if (encryptedMessage.length() < ENCRYPTION_PREFIX.length() + KEY_CHUNK_LENGTH) {
+            throw new IllegalArgumentException("Message format is corrupted or missing the key prefix.");
+        }
+        return Integer.parseUnsignedInt(encryptedMessage, ENCRYPTION_PREFIX.length(),
+                ENCRYPTION_PREFIX.length() + KEY_CHUNK_LENGTH, 16);
+    }
+
+    /**
+     * Validates PKCS7 padding in place and returns the unpadded length.
+     */
+    private static int unpad(byte[] data, int offset, int length) throws BadPaddingException {
+        int pad = data[offset + length - 1] & 0xff;
+        if (pad < 1 || pad > BLOCK_SIZE) {
+            throw new BadPaddingException("Invalid PKCS7 padding.");
+        }
+        for (int i = offset + length - pad; i < offset + length; i++) {
+            if ((data[i] & 0xff) != pad) {
+                throw new BadPaddingException("Invalid PKCS7 padding.");
+            }
+        }
+        return length - pad;
+    }
+
+    /**
+     * Per-thread Cipher plus the key it was last initialised with.
+     * ECB has no IV, so after doFinal the cipher is ready for the next frame with the same key.
+     */
+    private static final class CachedCipher {
+        private Cipher cipher;
+        private SecretKeySpec key;
+
+        Cipher forKey(SecretKeySpec secretKey) throws GeneralSecurityException {
+            if (cipher == null) {
+                cipher = Cipher.getInstance(TRANSFORMATION);
+            }
+            if (key != secretKey) {
+                cipher.init(Cipher.DECRYPT_MODE, secretKey);
+                key = secretKey;
+            }
+            return cipher;
+        }
+    }
 
-        return cipher.doFinal(encryptedBytes);
+    @PreDestroy
+    public void shutdown() {
+        decryptPool.shutdownNow();
     }
-}
\ No newline at end of file
+}
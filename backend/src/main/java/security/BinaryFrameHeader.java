@@ -0,0 +1,122 @@
+package security;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire layout of the binary ingest protocol used on /stream when the client
+ * negotiates {@code format=binary} during the handshake.
+ *
+ * Every binary WebSocket message is a fixed 32-byte big-endian header followed
+ * by the raw ciphertext (no Base64, no text prefix):
+ * <pre>
+ *  offset  size  field
+ *  0       1     version         (currently 1)
+ *  1       1     cipher mode     (0 = AES/ECB/PKCS5Padding, 1 = chunked AES/GCM)
+ *  2       2     chunk size      (KiB of plaintext per chunk for chunked GCM, 0 for ECB)
+ *  4       8     sequence number (monotonic per stream)
+ *  12      12    IV / nonce      (unused by ECB, zero-filled; for GCM the 12-byte base nonce)
+ *  24      4     key id          (selects the session key, see {@link SessionKeyRegistry}; 0 before any rotation)
+ *  28      4     payload length  (bytes of ciphertext that follow)
+ * </pre>
+ *
+ * In chunked GCM mode the plaintext is cut into chunks of the given size (the last one may be
+ * shorter), and each chunk is sealed on its own and sent as ciphertext followed by its 16-byte
+ * tag. Chunk {@code i} uses the base nonce with its last four bytes XORed with {@code i}, and
+ * authenticates the sequence number, {@code i} and a final-chunk flag as additional data, so
+ * chunks cannot be reordered, dropped or moved between frames. Chunks can therefore be
+ * decrypted independently and in parallel (see {@link AESUtil#decryptChunkedInto}).
+ *
+ * The accessors read straight from the message buffer so the handler never
+ * copies the frame before handing it to {@link AESUtil}.
+ */
+public final class BinaryFrameHeader {
+
+    public static final int HEADER_LENGTH = 32;
+    public static final byte VERSION = 1;
+    public static final byte MODE_ECB = 0;
+    public static final byte MODE_GCM_CHUNKED = 1;
+    public static final int IV_LENGTH = 12;
+    public static final int GCM_NONCE_LENGTH = 12;
+
+    private static final int VERSION_OFFSET = 0;
+    private static final int MODE_OFFSET = 1;
+    private static final int CHUNK_SIZE_OFFSET = 2;
+    private static final int SEQUENCE_OFFSET = 4;
+    private static final int IV_OFFSET = 12;
+    private static final int KEY_ID_OFFSET = 24;
+    private static final int LENGTH_OFFSET = 28;
+
+    private BinaryFrameHeader() {
+    }
+
+    /**
+     * Checks that the buffer holds a complete, supported frame.
+     * @param frame The message buffer, positioned at the start of the header.
+     * @throws IllegalArgumentException If the header is truncated, of an unknown version,
+     *         or declares a payload length that does not match the message.
+     */
+    public static void validate(ByteBuffer frame) {
+        if (frame.remaining() < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Binary frame shorter than header.");
+        }
+        if (version(frame) != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary frame version: " + version(frame));
+        }
+        if (mode(frame) != MODE_ECB && mode(frame) != MODE_GCM_CHUNKED) {
+            throw new IllegalArgumentException("Unsupported cipher mode: " + mode(frame));
+        }
+        if (mode(frame) == MODE_GCM_CHUNKED && chunkSize(frame) == 0) {
+            throw new IllegalArgumentException("Chunked frame without chunk size.");
+        }
+        int payloadLength = payloadLength(frame);
+        if (payloadLength < 0 || payloadLength != frame.remaining() - HEADER_LENGTH) {
+            throw new IllegalArgumentException("Binary frame payload length mismatch.");
+        }
+    }
+
+    public static int version(ByteBuffer frame) {
+        return frame.get(frame.position() + VERSION_OFFSET);
+    }
+
+    public static int mode(ByteBuffer frame) {
+        return frame.get(frame.position() + MODE_OFFSET);
+    }
+
+    /**
+     * @return Plaintext bytes per chunk in chunked GCM mode.
+     */
+    public static int chunkSize(ByteBuffer frame) {
+        return Short.toUnsignedInt(frame.getShort(frame.position() + CHUNK_SIZE_OFFSET)) * 1024;
+    }
+
+    public static long sequence(ByteBuffer frame) {
+        return frame.getLong(frame.position() + SEQUENCE_OFFSET);
+    }
+
+    /**
+     * @return The absolute index of the first IV byte within the buffer.
+     */
+    public static int ivOffset(ByteBuffer frame) {
+        return frame.position() + IV_OFFSET;
+    }
+
+    /**
+     * @return The id of the session key the payload was encrypted with.
+     */
+    public static int keyId(ByteBuffer frame) {
+        return frame.getInt(frame.position() + KEY_ID_OFFSET);
+    }
+
+    public static int payloadLength(ByteBuffer frame) {
+        return frame.getInt(frame.position() + LENGTH_OFFSET);
+    }
+
+    /**
+     * Moves the buffer position past the header so that the remaining bytes
+     * are exactly the ciphertext. Does not allocate a slice.
+     * @param frame A buffer that has already passed {@link #validate(ByteBuffer)}.
+     */
+    public static void skipHeader(ByteBuffer frame) {
+        frame.position(frame.position() + HEADER_LENGTH);
+    }
+}
@@ -0,0 +1,60 @@
+package security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * One registered key of a session, with its decrypt context prepared at registration.
+ *
+ * For ECB the entry owns a Cipher initialised once with this key. A stream's frames arrive
+ * one at a time on its WebSocket, so the cipher is reused for every frame without a provider
+ * lookup or key schedule, however many streams share the container's threads.
+ */
+public final class SessionKey {
+
+    private static final String ECB_TRANSFORMATION = "AES/ECB/NoPadding";
+
+    private final int keyId;
+    private final SecretKeySpec spec;
+    private final byte cipherMode;
+    /** Pre-initialised decrypt context for ECB; null for chunked GCM, which needs a nonce per chunk. */
+    private final Cipher ecbCipher;
+
+    SessionKey(int keyId, SecretKeySpec spec, byte cipherMode) throws GeneralSecurityException {
+        this.keyId = keyId;
+        this.spec = spec;
+        this.cipherMode = cipherMode;
+        if (cipherMode == BinaryFrameHeader.MODE_ECB) {
+            ecbCipher = Cipher.getInstance(ECB_TRANSFORMATION);
+            ecbCipher.init(Cipher.DECRYPT_MODE, spec);
+        } else {
+            ecbCipher = null;
+        }
+    }
+
+    /**
+     * @return The id frames carry to select this key (text key chunk or binary header).
+     */
+    public int keyId() {
+        return keyId;
+    }
+
+    public SecretKeySpec spec() {
+        return spec;
+    }
+
+    /**
+     * @return The {@link BinaryFrameHeader} cipher mode negotiated with this key.
+     */
+    public byte cipherMode() {
+        return cipherMode;
+    }
+
+    /**
+     * @return The ECB decrypt context; callers synchronise on this key while using it.
+     */
+    Cipher ecbCipher() {
+        return ecbCipher;
+    }
+}
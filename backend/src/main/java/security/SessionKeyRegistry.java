@@ -1,18 +1,138 @@
 package security;
 
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Stores the AES SecretKeySpec for each active session (streamer).
+ * Stores the AES keys of each active session (streamer).
  * The key is registered via the REST API before streaming starts.
+ *
+ * Each session also records the cipher mode its client negotiated at registration
+ * ({@value #CIPHER_ECB} by default, or {@value #CIPHER_GCM_CHUNKED}). Frames in any other mode
+ * are rejected, so a client cannot be downgraded to ECB once it registered for GCM.
+ *
+ * Keys are rotated in-band: registering a key with a new key id for an existing session makes
+ * it current while the previous key stays valid for {@code session.key.rotation-overlap-ms},
+ * and every frame names the key it was encrypted with. The ingest handler keeps a reference to
+ * the session's {@link Entry} for the whole connection, so rotation needs no reconnect and
+ * frames need no map lookup.
+ *
+ * Entries are removed when the last stream using them closes, when they have not been used for
+ * {@code session.key.idle-timeout-ms} without a connection, or once the current key is older
+ * than {@code session.key.ttl-ms}. At most {@code session.key.max-entries} sessions are kept.
+ * An entry evicted while connections are bound to it is revoked; those connections bind again
+ * to the keys the streamer registers next.
  */
 @Service
 public class SessionKeyRegistry {
 
+    public static final String CIPHER_ECB = "ecb";
+    public static final String CIPHER_GCM_CHUNKED = "gcm-chunked";
+
     private static final String ALGO = "AES";
-    private final ConcurrentHashMap<String, SecretKeySpec> keys = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final long idleTimeoutNanos;
+    private final long rotationOverlapNanos;
+    private final int maxEntries;
+    private final AtomicLong evictedKeys = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-key-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionKeyRegistry(@Value("${session.key.ttl-ms:43200000}") long ttlMs,
+                              @Value("${session.key.idle-timeout-ms:600000}") long idleTimeoutMs,
+                              @Value("${session.key.rotation-overlap-ms:10000}") long rotationOverlapMs,
+                              @Value("${session.key.max-entries:10000}") int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.rotationOverlapNanos = TimeUnit.MILLISECONDS.toNanos(rotationOverlapMs);
+        this.maxEntries = maxEntries;
+        long sweepMs = Math.max(1000, Math.min(30_000, idleTimeoutMs / 2));
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The keys of one session: the current one and, during a rotation, the previous one.
+     */
+    public static final class Entry {
+        private volatile SessionKey current;
+        private volatile SessionKey previous;
+        private volatile long previousExpiresNanos;
+        private volatile long currentSinceNanos;
+        private volatile long lastUsedNanos;
+        private volatile boolean revoked;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private Entry(SessionKey key) {
+            current = key;
+            currentSinceNanos = lastUsedNanos = System.nanoTime();
+        }
+
+        /**
+         * Selects the key a frame was encrypted with. Cheap enough to call per frame.
+         * @param keyId The key id carried by the frame.
+         * @return The current key, the previous one while its overlap lasts, or null.
+         */
+        public SessionKey forKeyId(int keyId) {
+            if (revoked) {
+                return null;
+            }
+            long now = System.nanoTime();
+            SessionKey key = current;
+            if (key.keyId() != keyId) {
+                key = previous;
+                if (key == null || key.keyId() != keyId || now - previousExpiresNanos > 0) {
+                    return null;
+                }
+            }
+            lastUsedNanos = now;
+            return key;
+        }
+
+        public SessionKey current() {
+            return current;
+        }
+
+        /**
+         * @return true once the entry has been evicted; a connection bound to it should
+         *         {@link SessionKeyRegistry#detach} and {@link SessionKeyRegistry#attach} again to pick up
+         *         newly registered keys.
+         */
+        public boolean isRevoked() {
+            return revoked;
+        }
+
+        private synchronized void install(SessionKey key, long overlapNanos) {
+            long now = System.nanoTime();
+            if (key.keyId() != current.keyId()) {
+                previous = current;
+                previousExpiresNanos = now + overlapNanos;
+            } else {
+                // Same id: a fresh registration for the session, not a rotation
+                previous = null;
+            }
+            current = key;
+            currentSinceNanos = now;
+            lastUsedNanos = now;
+            revoked = false;
+        }
+    }
 
     /**
      * Registers a new key from the raw byte string provided by the client.
@@ -20,21 +140,147 @@ public class SessionKeyRegistry {
      * @param aesKeyString The raw byte string of the AES key.
      */
     public void registerKey(String sessionId, String aesKeyString) {
+        registerKey(sessionId, aesKeyString, CIPHER_ECB, 0);
+    }
+
+    /**
+     * Registers a key together with the cipher mode the client will use.
+     * If the session already has a key under a different id, this is a rotation.
+     * @param sessionId The ID of the session (username).
+     * @param aesKeyString The raw byte string of the AES key.
+     * @param cipherMode {@value #CIPHER_ECB} or {@value #CIPHER_GCM_CHUNKED}; null means ECB.
+     * @param keyId The id frames encrypted with this key will carry.
+     * @throws IllegalArgumentException If the cipher mode or the key is invalid.
+     * @throws IllegalStateException If the registry is full of sessions that are still streaming.
+     */
+    public void registerKey(String sessionId, String aesKeyString, String cipherMode, int keyId) {
+        byte mode = parseCipherMode(cipherMode);
+        String modeName = cipherMode == null ? CIPHER_ECB : cipherMode;
+        SessionKey key;
         try {
-            SecretKeySpec spec = new SecretKeySpec(aesKeyString.getBytes("ISO-8859-1"), ALGO);
-            keys.put(sessionId, spec);
-            System.out.println("Registered key for session: " + sessionId);
-        } catch (java.io.UnsupportedEncodingException e) {
-            throw new RuntimeException("Failed to encode AES key", e);
+            key = new SessionKey(keyId, new SecretKeySpec(aesKeyString.getBytes(StandardCharsets.ISO_8859_1), ALGO), mode);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid AES key: " + e.getMessage(), e);
+        }
+
+        if (!entries.containsKey(sessionId) && entries.size() >= maxEntries) {
+            makeRoom();
         }
+        Entry entry = entries.compute(sessionId, (id, existing) -> {
+            if (existing == null) {
+                return new Entry(key);
+            }
+            existing.install(key, rotationOverlapNanos);
+            return existing;
+        });
+        System.out.println((entry.previous != null ? "Rotated" : "Registered") + " key for session: " + sessionId
+                + " (" + modeName + ", key id " + keyId + ")");
     }
 
     /**
-     * Retrieves the SecretKeySpec for a given session ID.
+     * Retrieves the current key for a given session ID.
      * @param sessionId The ID of the session (username).
      * @return The SecretKeySpec or null if not found.
      */
     public SecretKeySpec getKey(String sessionId) {
-        return keys.get(sessionId);
+        Entry entry = entries.get(sessionId);
+        return entry == null ? null : entry.current().spec();
+    }
+
+    /**
+     * Binds a stream connection to the session's keys. The entry is kept while connections are bound.
+     * @return The entry to select keys from for the rest of the connection, or null if no key is registered.
+     */
+    public Entry attach(String sessionId) {
+        Entry entry = entries.get(sessionId);
+        if (entry != null) {
+            entry.connections.incrementAndGet();
+            entry.lastUsedNanos = System.nanoTime();
+        }
+        return entry;
+    }
+
+    /**
+     * Releases a binding made by {@link #attach(String)}; the last one removes the session's keys.
+     */
+    public void detach(String sessionId, Entry entry) {
+        if (entry.connections.decrementAndGet() == 0 && entries.remove(sessionId, entry)) {
+            System.out.println("Removed keys for session: " + sessionId);
+        }
+    }
+
+    /**
+     * @return Number of sessions holding keys.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Sessions whose keys were dropped for expiry, idleness or the size cap.
+     */
+    public long getEvictedKeys() {
+        return evictedKeys.get();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        entries.forEach((sessionId, entry) -> {
+            if (entry.previous != null && now - entry.previousExpiresNanos > 0) {
+                entry.previous = null;
+            }
+            if (now - entry.currentSinceNanos > ttlNanos) {
+                evict(sessionId, entry, "expired");
+            } else if (entry.connections.get() == 0 && now - entry.lastUsedNanos > idleTimeoutNanos) {
+                evict(sessionId, entry, "idle");
+            }
+        });
+    }
+
+    /**
+     * Frees a slot for a new session: sweeps, then drops the least recently used session without a connection.
+     */
+    private void makeRoom() {
+        sweep();
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        String idlest = null;
+        Entry idlestEntry = null;
+        for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+            Entry entry = candidate.getValue();
+            if (entry.connections.get() == 0
+                    && (idlestEntry == null || entry.lastUsedNanos - idlestEntry.lastUsedNanos < 0)) {
+                idlest = candidate.getKey();
+                idlestEntry = entry;
+            }
+        }
+        if (idlestEntry == null) {
+            throw new IllegalStateException("Session key registry is full");
+        }
+        evict(idlest, idlestEntry, "registry full");
+    }
+
+    private void evict(String sessionId, Entry entry, String reason) {
+        if (entries.remove(sessionId, entry)) {
+            entry.revoked = true;
+            evictedKeys.incrementAndGet();
+            System.out.println("Evicted keys for session: " + sessionId + " (" + reason + ")");
+        }
+    }
+
+    private static byte parseCipherMode(String cipherMode) {
+        if (cipherMode == null || cipherMode.equals(CIPHER_ECB)) {
+            return BinaryFrameHeader.MODE_ECB;
+        }
+        if (cipherMode.equals(CIPHER_GCM_CHUNKED)) {
+            return BinaryFrameHeader.MODE_GCM_CHUNKED;
+        }
+        throw new IllegalArgumentException("Unsupported cipher mode: " + cipherMode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
     }
-}
\ No newline at end of file
+}
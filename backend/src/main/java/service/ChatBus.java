@@ -0,0 +1,58 @@
+package service;
+
+import java.util.List;
+
+/**
+ * Carries chat batches between the nodes that serve a room.
+ *
+ * The node that receives a message stamps it and publishes the serialized batch once; the bus
+ * hands it to the {@link Listener} of every node, the publishing one included, and each node
+ * fans it out to its own members. Clients of one room can therefore be spread over several
+ * nodes, with one copy of each batch per node rather than per remote client.
+ *
+ * {@link LocalChatBus} is the single-node default; {@link TcpChatBus} links nodes
+ * ({@code chat.bus.port} / {@code chat.bus.peers}).
+ */
+public interface ChatBus {
+
+    /**
+     * Number of node IDs, i.e. the largest number of nodes that can be linked.
+     */
+    int MAX_NODES = 100;
+
+    /**
+     * Receives batches published on any node.
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * Called on the publishing thread for local batches, on a bus thread for remote ones;
+         * batches from one node arrive in the order they were published.
+         * @param roomId The room the batch belongs to.
+         * @param ids Message IDs, ascending, one per entry of {@code messages}.
+         * @param messages Serialized messages.
+         */
+        void onBatch(String roomId, long[] ids, List<String> messages);
+    }
+
+    /**
+     * Sets the listener batches are delivered to. Batches arriving before it is set are dropped.
+     */
+    void subscribe(Listener listener);
+
+    /**
+     * Delivers a batch to this node's listener and queues it for the other nodes. Never blocks on the network.
+     */
+    void publish(String roomId, long[] ids, List<String> messages);
+
+    /**
+     * @return This node's ID, unique among the linked nodes and below {@link #MAX_NODES}; it
+     * forms the low digits of the message IDs this node assigns, so IDs never collide across nodes.
+     */
+    default int nodeId() {
+        return 0;
+    }
+
+    default void close() {
+    }
+}
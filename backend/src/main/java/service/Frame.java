@@ -0,0 +1,195 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A decrypted JPEG frame backed by a pooled byte array.
+ * Frames are reference counted: the publisher owns the first reference, every reader
+ * (viewer, recorder, ...) takes its own with {@link #tryRetain()} and gives it back with
+ * {@link #release()}. When the last reference is released the frame returns to its
+ * {@link FrameBufferPool} and its array is reused for a later frame.
+ *
+ * The JPEG starts at {@link #HEADROOM} so that the MJPEG part headers can be written
+ * directly in front of it on publish (see {@link MjpegPart}). The whole multipart part is
+ * then one contiguous slice, {@link #partOffset()} .. {@link #partOffset()} + {@link #partLength()},
+ * shared read-only by every viewer. The {@code /watch} message header goes in front of the part
+ * headers (see {@link WatchHeader}), so a {@code /watch} message is the slice from
+ * {@link #watchOffset()} to the end of the JPEG.
+ */
+public final class Frame {
+
+    /** Bytes reserved in front of the JPEG for the {@code /watch} header and the multipart boundary and headers. */
+    public static final int HEADROOM = 128;
+
+    private final byte[] buffer;
+    private final FrameBufferPool pool;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private int length;
+    private int partOffset;
+    private int watchOffset;
+    private long sequence;
+    private long timestampMillis;
+    private long contentHash;
+
+    Frame(byte[] buffer, FrameBufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /**
+     * Re-arms a pooled frame for a new owner. Called by the pool only.
+     */
+    void reset() {
+        length = 0;
+        partOffset = HEADROOM;
+        watchOffset = HEADROOM;
+        sequence = 0;
+        timestampMillis = 0;
+        contentHash = 0;
+        refCount.set(1);
+    }
+
+    /**
+     * @return The backing array. JPEG data occupies {@link #dataOffset()} .. {@link #dataOffset()} + {@link #length()}.
+     */
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * @return Index in {@link #array()} at which the JPEG data starts.
+     */
+    public int dataOffset() {
+        return HEADROOM;
+    }
+
+    /**
+     * @return Number of bytes available for JPEG data.
+     */
+    public int capacity() {
+        return buffer.length - HEADROOM;
+    }
+
+    /**
+     * @return Number of JPEG bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Sets the number of valid bytes after the owner has filled the array from {@link #dataOffset()}.
+     * @param length Number of JPEG bytes written.
+     */
+    public void setLength(int length) {
+        if (length < 0 || length > capacity()) {
+            throw new IllegalArgumentException("Frame length out of range: " + length);
+        }
+        this.length = length;
+    }
+
+    /**
+     * @return Index of the first byte of the encoded MJPEG part (boundary + headers + JPEG).
+     */
+    public int partOffset() {
+        return partOffset;
+    }
+
+    /**
+     * @return Length of the encoded MJPEG part; equals {@link #length()} before the headers are written.
+     */
+    public int partLength() {
+        return HEADROOM - partOffset + length;
+    }
+
+    /**
+     * Records where the part headers written in front of the JPEG begin. Called by {@link MjpegPart}.
+     */
+    void setPartOffset(int partOffset) {
+        this.partOffset = partOffset;
+    }
+
+    /**
+     * @return Index of the first byte of the {@code /watch} message (header + JPEG).
+     */
+    public int watchOffset() {
+        return watchOffset;
+    }
+
+    /**
+     * @return Length of the {@code /watch} message; equals {@link #length()} before the header is written.
+     */
+    public int watchLength() {
+        return HEADROOM - watchOffset + length;
+    }
+
+    /**
+     * Records where the {@code /watch} header begins. Called by {@link WatchHeader}.
+     */
+    void setWatchOffset(int watchOffset) {
+        this.watchOffset = watchOffset;
+    }
+
+    /**
+     * @return The per-stream version assigned when the frame was published; strictly increasing.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * @return Wall-clock time (ms) at which the frame was published.
+     */
+    public long timestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * Stamps the frame with its version. Called by StreamManager on publish.
+     */
+    void stamp(long sequence, long timestampMillis) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+    }
+
+    /**
+     * @return 64-bit fingerprint of the JPEG bytes, computed once when the frame was ingested;
+     *         0 for frames that were not fingerprinted (e.g. scaled renditions).
+     */
+    public long contentHash() {
+        return contentHash;
+    }
+
+    void setContentHash(long contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Takes an additional reference, unless the frame has already been fully released.
+     * @return true if the caller now holds a reference and must call {@link #release()}.
+     */
+    public boolean tryRetain() {
+        int current;
+        do {
+            current = refCount.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!refCount.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Drops one reference; the last one hands the buffer back to the pool.
+     */
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            if (pool != null) {
+                pool.recycle(this);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released more often than retained");
+        }
+    }
+}
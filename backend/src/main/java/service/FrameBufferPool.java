@@ -0,0 +1,71 @@
+package service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Size-classed pool of {@link Frame} buffers for the ingest path.
+ * Classes are powers of two from 16 KB to 4 MB; each class keeps at most
+ * {@code maxPooledBytes / classSize} idle frames (never fewer than two).
+ * ArrayBlockingQueue is used on purpose: unlike linked queues, offer/poll do not
+ * allocate, so a steady stream of frames recycles without touching the heap.
+ */
+@Component
+public class FrameBufferPool {
+
+    private static final int MIN_CLASS_SHIFT = 14; // 16 KB
+    private static final int MAX_CLASS_SHIFT = 22; // 4 MB
+
+    private final ArrayBlockingQueue<Frame>[] classes;
+
+    @SuppressWarnings("unchecked")
+    public FrameBufferPool(@Value("${stream.buffer-pool.max-bytes:67108864}") long maxPooledBytes) {
+        classes = new ArrayBlockingQueue[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            long classSize = 1L << (MIN_CLASS_SHIFT + i);
+            int capacity = (int) Math.max(2, Math.min(1024, maxPooledBytes / classSize));
+            classes[i] = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    /**
+     * Returns a frame with at least {@code minCapacity} bytes of JPEG space (plus {@link Frame#HEADROOM})
+     * and one reference held by the caller.
+     * Requests larger than the biggest class get an unpooled frame.
+     * @param minCapacity The number of bytes the caller is about to write.
+     * @return A reset frame with length 0.
+     */
+    public Frame acquire(int minCapacity) {
+        int size = minCapacity + Frame.HEADROOM;
+        int index = classIndex(size);
+        if (index < 0) {
+            Frame oversized = new Frame(new byte[size], null);
+            oversized.reset();
+            return oversized;
+        }
+
+        Frame frame = classes[index].poll();
+        if (frame == null) {
+            frame = new Frame(new byte[1 << (MIN_CLASS_SHIFT + index)], this);
+        }
+        frame.reset();
+        return frame;
+    }
+
+    /**
+     * Returns a fully released frame to its size class, or lets it be collected if the class is full.
+     */
+    void recycle(Frame frame) {
+        int index = classIndex(frame.array().length);
+        if (index >= 0) {
+            classes[index].offer(frame);
+        }
+    }
+
+    private static int classIndex(int size) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+}
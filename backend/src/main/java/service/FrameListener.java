@@ -0,0 +1,23 @@
+package service;
+
+/**
+ * Receives frames pushed by {@link StreamManager} as soon as they are published.
+ * Callbacks run on the publishing (ingest) thread, so implementations must not block.
+ * The frame is only guaranteed valid for the duration of the call: a listener that
+ * keeps it must take its own reference with {@link Frame#tryRetain()}.
+ */
+public interface FrameListener {
+
+    /**
+     * Called once per new frame version. Around {@link StreamManager#subscribe} the current
+     * frame may race with the next publish, so compare {@link Frame#sequence()} if order matters.
+     * @param frame The newly published frame.
+     */
+    void onFrame(Frame frame);
+
+    /**
+     * Called when the stream is removed; no further frames will follow.
+     */
+    default void onStreamEnded() {
+    }
+}
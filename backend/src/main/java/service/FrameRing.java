@@ -0,0 +1,138 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded history of recent frames for one stream, stored off-heap.
+ *
+ * Frame bytes are appended to a fixed direct buffer used as a circular log; a parallel
+ * index (sequence, timestamp, offset, length) records where each frame lives. When the
+ * log wraps, the oldest frames whose bytes would be overwritten are evicted, so the ring
+ * holds as many recent frames as fit in its byte budget (capped at {@code maxFrames}).
+ *
+ * One writer (the stream's ingest thread) and occasional readers (joining viewers), so a
+ * plain monitor is sufficient.
+ */
+final class FrameRing {
+
+    private final ByteBuffer storage;
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private int head;
+    private int count;
+    private int writePosition;
+    private boolean closed;
+
+    FrameRing(ByteBuffer storage, int maxFrames) {
+        this.storage = storage;
+        this.sequences = new long[maxFrames];
+        this.timestamps = new long[maxFrames];
+        this.offsets = new int[maxFrames];
+        this.lengths = new int[maxFrames];
+    }
+
+    ByteBuffer storage() {
+        return storage;
+    }
+
+    /**
+     * Copies a published frame into the ring, evicting whatever it overwrites.
+     * Frames larger than the whole ring are not kept.
+     */
+    synchronized void append(Frame frame) {
+        int length = frame.length();
+        int capacity = storage.capacity();
+        if (closed || length == 0 || length > capacity) {
+            return;
+        }
+
+        int start = writePosition;
+        if (start + length > capacity) {
+            // Wrap: everything still stored past the old write position is older than what sits at the front
+            while (count > 0 && offsets[head] >= writePosition) {
+                evictOldest();
+            }
+            start = 0;
+        }
+        int end = start + length;
+        while (count > 0 && offsets[head] < end && offsets[head] + lengths[head] > start) {
+            evictOldest();
+        }
+        if (count == sequences.length) {
+            evictOldest();
+        }
+
+        storage.put(start, frame.array(), frame.dataOffset(), length);
+
+        int index = (head + count) % sequences.length;
+        sequences[index] = frame.sequence();
+        timestamps[index] = frame.timestampMillis();
+        offsets[index] = start;
+        lengths[index] = length;
+        count++;
+        writePosition = end;
+    }
+
+    /**
+     * Copies out every stored frame published at or after the given time, oldest first.
+     * @param sinceTimestampMillis Wall-clock lower bound.
+     * @param pool Pool supplying the heap frames the data is copied into.
+     * @return Frames with one reference each, owned by the caller.
+     */
+    synchronized List<Frame> readSince(long sinceTimestampMillis, FrameBufferPool pool) {
+        int skip = 0;
+        while (skip < count && timestamps[(head + skip) % sequences.length] < sinceTimestampMillis) {
+            skip++;
+        }
+        return copyOut(skip, pool);
+    }
+
+    /**
+     * Copies out every stored frame with a sequence number greater than the given one, oldest first.
+     * @param afterSequence Last sequence the reader already has.
+     * @param pool Pool supplying the heap frames the data is copied into.
+     * @return Frames with one reference each, owned by the caller.
+     */
+    synchronized List<Frame> readAfter(long afterSequence, FrameBufferPool pool) {
+        int skip = 0;
+        while (skip < count && sequences[(head + skip) % sequences.length] <= afterSequence) {
+            skip++;
+        }
+        return copyOut(skip, pool);
+    }
+
+    /**
+     * Drops all frames and stops accepting new ones, so the storage can be handed to another ring.
+     */
+    synchronized void close() {
+        closed = true;
+        head = 0;
+        count = 0;
+        writePosition = 0;
+    }
+
+    private List<Frame> copyOut(int skip, FrameBufferPool pool) {
+        List<Frame> frames = new ArrayList<>(count - skip);
+        for (int i = skip; i < count; i++) {
+            int index = (head + i) % sequences.length;
+            Frame frame = pool.acquire(lengths[index]);
+            storage.get(offsets[index], frame.array(), frame.dataOffset(), lengths[index]);
+            frame.setLength(lengths[index]);
+            frame.stamp(sequences[index], timestamps[index]);
+            MjpegPart.encodeHeaders(frame);
+            WatchHeader.encode(frame, Rendition.FULL);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private void evictOldest() {
+        head = (head + 1) % sequences.length;
+        count--;
+    }
+}
@@ -0,0 +1,69 @@
+package service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out off-heap {@link FrameRing}s within a global memory budget.
+ * Every ring gets {@code stream.ring.per-stream-bytes} of direct memory; once
+ * {@code stream.ring.global-bytes} is reserved, further streams run without history.
+ * Buffers of removed streams are kept for reuse so that stream churn does not keep
+ * allocating direct memory that is only freed by a later GC.
+ */
+@Component
+public class FrameRingAllocator {
+
+    private final int perStreamBytes;
+    private final int maxFrames;
+    private final long globalBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final ArrayBlockingQueue<ByteBuffer> spareBuffers;
+
+    public FrameRingAllocator(@Value("${stream.ring.per-stream-bytes:8388608}") int perStreamBytes,
+                              @Value("${stream.ring.global-bytes:268435456}") long globalBytes,
+                              @Value("${stream.ring.max-frames:300}") int maxFrames) {
+        this.perStreamBytes = perStreamBytes;
+        this.globalBytes = globalBytes;
+        this.maxFrames = maxFrames;
+        int maxRings = perStreamBytes > 0 ? (int) Math.min(1024, globalBytes / perStreamBytes) : 0;
+        this.spareBuffers = new ArrayBlockingQueue<>(Math.max(1, maxRings));
+    }
+
+    /**
+     * @return A new empty ring, or null if history is disabled or the global budget is exhausted.
+     */
+    FrameRing allocate() {
+        if (perStreamBytes <= 0 || maxFrames <= 0) {
+            return null;
+        }
+        long reserved;
+        do {
+            reserved = reservedBytes.get();
+            if (reserved + perStreamBytes > globalBytes) {
+                return null;
+            }
+        } while (!reservedBytes.compareAndSet(reserved, reserved + perStreamBytes));
+
+        ByteBuffer storage = spareBuffers.poll();
+        if (storage == null) {
+            storage = ByteBuffer.allocateDirect(perStreamBytes);
+        }
+        return new FrameRing(storage, maxFrames);
+    }
+
+    /**
+     * Returns a ring's memory to the budget.
+     */
+    void release(FrameRing ring) {
+        if (ring == null) {
+            return;
+        }
+        ring.close();
+        spareBuffers.offer(ring.storage());
+        reservedBytes.addAndGet(-perStreamBytes);
+    }
+}
@@ -0,0 +1,79 @@
+package service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-stream state held by {@link StreamManager}: the latest frame, its version counter,
+ * the listeners waiting for the next one, the optional history ring and the scaled renditions.
+ * With lazy decryption it also holds the newest frame that has not been decrypted yet.
+ */
+class LiveStream {
+
+    final String username;
+    final AtomicReference<Frame> latest = new AtomicReference<>();
+    final CopyOnWriteArrayList<FrameListener> listeners = new CopyOnWriteArrayList<>();
+    /** Recent frames for catch-up and rewind; null when history is disabled or over budget. */
+    final FrameRing ring;
+    /** One feed per rendition other than {@link Rendition#FULL}; fixed at construction. */
+    final Map<Rendition, RenditionFeed> renditions = new EnumMap<>(Rendition.class);
+
+    /** Newest undecrypted frame (lazy decryption only); taken by whoever opens it. */
+    final AtomicReference<SealedFrame> sealed = new AtomicReference<>();
+    /** Pending open requests; the one that takes it from 0 runs the open loop. */
+    final AtomicInteger openRequests = new AtomicInteger();
+
+    /** Frames received from the streamer, decrypted or not, and when the last one arrived. */
+    volatile long receivedFrames;
+    volatile long lastReceivedMillis;
+
+    /**
+     * Written only by the thread publishing the stream's frames: the ingest connection, or with
+     * lazy decryption the one open loop running for the stream.
+     */
+    private long nextSequence = 1;
+    /** Fingerprint, length and time of the last published frame; publishing thread only. */
+    long lastContentHash;
+    int lastLength = -1;
+    long lastPublishedNanos;
+
+    LiveStream(String username, FrameRing ring, RenditionTranscoder transcoder) {
+        this.username = username;
+        this.ring = ring;
+        for (Rendition rendition : Rendition.values()) {
+            if (rendition != Rendition.FULL) {
+                renditions.put(rendition, new RenditionFeed(username, rendition, transcoder));
+            }
+        }
+    }
+
+    long nextSequence() {
+        return nextSequence++;
+    }
+
+    /**
+     * Counts a frame received from the streamer; ingest thread only.
+     */
+    void received() {
+        receivedFrames++;
+        lastReceivedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if a viewer, the recorder or a rendition feed is subscribed to the stream.
+     */
+    boolean hasReaders() {
+        if (!listeners.isEmpty()) {
+            return true;
+        }
+        for (RenditionFeed feed : renditions.values()) {
+            if (!feed.listeners.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
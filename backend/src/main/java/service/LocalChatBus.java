@@ -0,0 +1,25 @@
+package service;
+
+import java.util.List;
+
+/**
+ * In-process {@link ChatBus}: batches go straight to this node's listener.
+ * All members of a room must then be connected to the same node.
+ */
+public class LocalChatBus implements ChatBus {
+
+    private volatile Listener listener;
+
+    @Override
+    public void subscribe(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void publish(String roomId, long[] ids, List<String> messages) {
+        Listener current = listener;
+        if (current != null) {
+            current.onBatch(roomId, ids, messages);
+        }
+    }
+}
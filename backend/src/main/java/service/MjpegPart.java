@@ -0,0 +1,46 @@
+package service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the multipart/x-mixed-replace framing used by the MJPEG viewer endpoint.
+ * The part headers are written once per frame, into the {@link Frame#HEADROOM} in front of
+ * the JPEG, so every viewer sends the same bytes with a single write and no per-viewer
+ * String building.
+ */
+public final class MjpegPart {
+
+    public static final String BOUNDARY = "--frameboundary";
+    public static final String CONTENT_TYPE = "multipart/x-mixed-replace; boundary=" + BOUNDARY;
+
+    private static final byte[] HEADER_PREFIX = ("\r\n" + BOUNDARY + "\r\n"
+            + "Content-Type: image/jpeg\r\n"
+            + "Content-Length: ").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER_SUFFIX = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private MjpegPart() {
+    }
+
+    /**
+     * Writes boundary and headers immediately before the frame's JPEG data, without allocating.
+     * @param frame A frame whose data and length are final.
+     */
+    static void encodeHeaders(Frame frame) {
+        byte[] buffer = frame.array();
+        int position = frame.dataOffset();
+
+        position -= HEADER_SUFFIX.length;
+        System.arraycopy(HEADER_SUFFIX, 0, buffer, position, HEADER_SUFFIX.length);
+
+        int value = frame.length();
+        do {
+            buffer[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        position -= HEADER_PREFIX.length;
+        System.arraycopy(HEADER_PREFIX, 0, buffer, position, HEADER_PREFIX.length);
+
+        frame.setPartOffset(position);
+    }
+}
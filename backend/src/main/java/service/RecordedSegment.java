@@ -0,0 +1,86 @@
+package service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only, memory-mapped view of one segment written by {@link StreamRecorder}.
+ * Both files are mapped once; frames are returned as slices of the mapping, so replay reads
+ * straight from the page cache instead of through heap buffers. A segment that is still being
+ * recorded is mapped up to its last complete index record.
+ */
+public final class RecordedSegment {
+
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    private final int frameCount;
+
+    private RecordedSegment(MappedByteBuffer data, MappedByteBuffer index) {
+        this.data = data;
+        this.index = index;
+        this.frameCount = index.capacity() / StreamRecorder.INDEX_RECORD_BYTES;
+    }
+
+    /**
+     * Maps a segment given the path of its data file.
+     * @param dataFile A {@code .mjpg} file returned by {@link StreamRecorder#listSegments(String)}.
+     */
+    public static RecordedSegment open(Path dataFile) throws IOException {
+        String name = dataFile.getFileName().toString();
+        Path indexFile = dataFile.resolveSibling(
+                name.substring(0, name.length() - StreamRecorder.DATA_SUFFIX.length()) + StreamRecorder.INDEX_SUFFIX);
+
+        try (FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long indexSize = indexChannel.size() - indexChannel.size() % StreamRecorder.INDEX_RECORD_BYTES;
+            MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexSize);
+            // Mappings stay valid after the channels are closed
+            MappedByteBuffer data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataChannel.size());
+            return new RecordedSegment(data, index);
+        }
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    public long timestampMillis(int frame) {
+        return index.getLong(frame * StreamRecorder.INDEX_RECORD_BYTES);
+    }
+
+    /**
+     * @return Index of the first frame recorded at or after the given time, or {@link #frameCount()} if none.
+     */
+    public int firstFrameAtOrAfter(long timestampMillis) {
+        int low = 0;
+        int high = frameCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampMillis(mid) < timestampMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The encoded MJPEG part (boundary, headers and JPEG) as a slice of the mapped data file.
+     * @throws IllegalStateException If the index record points outside the data file.
+     */
+    public ByteBuffer part(int frame) {
+        int record = frame * StreamRecorder.INDEX_RECORD_BYTES;
+        long offset = index.getLong(record + 16);
+        int length = index.getInt(record + 24);
+        if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+            throw new IllegalStateException("Index record " + frame + " points outside the segment: offset "
+                    + offset + ", length " + length + ", segment " + data.capacity() + " bytes");
+        }
+        return data.slice((int) offset, length);
+    }
+}
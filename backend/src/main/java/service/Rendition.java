@@ -0,0 +1,54 @@
+package service;
+
+/**
+ * The rendition ladder viewers can choose from with {@code /view/{username}?rendition=}.
+ * {@link #FULL} is the streamer's own JPEG; the others are scaled down to a maximum height
+ * and re-encoded by the {@link RenditionTranscoder}, only while someone is watching them.
+ */
+public enum Rendition {
+
+    FULL("full", 0, 0f),
+    P480("480p", 480, 0.75f),
+    P240("240p", 240, 0.6f);
+
+    private final String label;
+    private final int maxHeight;
+    private final float jpegQuality;
+
+    Rendition(String label, int maxHeight, float jpegQuality) {
+        this.label = label;
+        this.maxHeight = maxHeight;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * @param label The query parameter value, e.g. {@code 480p}.
+     * @return The matching rendition, or null if there is none.
+     */
+    public static Rendition fromLabel(String label) {
+        for (Rendition rendition : values()) {
+            if (rendition.label.equalsIgnoreCase(label)) {
+                return rendition;
+            }
+        }
+        return null;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @return Height in pixels the frame is scaled down to; 0 for {@link #FULL}.
+     */
+    public int maxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * @return Compression quality (0..1) used when re-encoding the scaled frame.
+     */
+    public float jpegQuality() {
+        return jpegQuality;
+    }
+}
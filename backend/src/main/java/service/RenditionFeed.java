@@ -0,0 +1,162 @@
+package service;
+
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One scaled {@link Rendition} of a live stream, held by its {@link LiveStream}: the listeners
+ * watching it, the latest scaled frame and the source frame waiting to be scaled.
+ *
+ * Source frames are only offered while the feed has listeners. Like a viewer, the feed is
+ * latest-frame-wins: while one frame is being transcoded, newer source frames replace each
+ * other in a single slot, so every source frame is transcoded at most once and the feed never
+ * has more than one task on the transcoder pool.
+ */
+final class RenditionFeed {
+
+    final Rendition rendition;
+    final CopyOnWriteArrayList<FrameListener> listeners = new CopyOnWriteArrayList<>();
+    final AtomicReference<Frame> latest = new AtomicReference<>();
+
+    private final String username;
+    private final RenditionTranscoder transcoder;
+    private final AtomicReference<Frame> pendingSource = new AtomicReference<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private volatile boolean ended;
+    private volatile long publishedSequence;
+    private boolean failureLogged;
+
+    RenditionFeed(String username, Rendition rendition, RenditionTranscoder transcoder) {
+        this.username = username;
+        this.rendition = rendition;
+        this.transcoder = transcoder;
+    }
+
+    /**
+     * Queues a published source frame for transcoding. Runs on the ingest thread; never blocks.
+     */
+    void offer(Frame source) {
+        if (ended || listeners.isEmpty() || !source.tryRetain()) {
+            return;
+        }
+        Frame superseded = pendingSource.getAndSet(source);
+        if (superseded != null) {
+            superseded.release();
+            transcoder.recordSkipped();
+        }
+        if (drainRequests.getAndIncrement() == 0 && !transcoder.execute(this::drain)) {
+            // Pool saturated: skip this frame, the next one tries again
+            drainRequests.set(0);
+            releasePendingSource();
+            transcoder.recordSkipped();
+        }
+    }
+
+    /**
+     * Transcodes pending source frames one at a time. Offers that arrive during a drain make it
+     * loop once more instead of starting a second task.
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            Frame source;
+            while (!ended && (source = pendingSource.getAndSet(null)) != null) {
+                try {
+                    boolean current = latest.get() != null && source.sequence() <= publishedSequence;
+                    if (!listeners.isEmpty() && !current) {
+                        transcodeAndPublish(source);
+                    }
+                } finally {
+                    source.release();
+                }
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+
+        if (ended) {
+            releasePendingSource();
+        }
+    }
+
+    private void transcodeAndPublish(Frame source) {
+        Frame scaled;
+        try {
+            scaled = transcoder.transcode(source, rendition);
+        } catch (IOException | RuntimeException e) {
+            transcoder.recordFailed();
+            if (!failureLogged) {
+                failureLogged = true;
+                System.err.println("Rendition " + rendition.label() + " of " + username + " failed: " + e.getMessage());
+            }
+            return;
+        }
+
+        if (scaled == null) {
+            // Source is already small enough; share it instead of re-encoding
+            if (!source.tryRetain()) {
+                return;
+            }
+            scaled = source;
+        } else {
+            scaled.stamp(source.sequence(), source.timestampMillis());
+            MjpegPart.encodeHeaders(scaled);
+            WatchHeader.encode(scaled, rendition);
+            transcoder.recordTranscoded();
+        }
+
+        Frame previous = latest.getAndSet(scaled);
+        if (previous != null) {
+            previous.release();
+        }
+        publishedSequence = scaled.sequence();
+
+        for (FrameListener listener : listeners) {
+            try {
+                listener.onFrame(scaled);
+            } catch (RuntimeException e) {
+                System.err.println("Frame listener failed for " + username + " (" + rendition.label() + "): " + e.getMessage());
+            }
+        }
+        if (ended) {
+            releaseLatest();
+        }
+    }
+
+    /**
+     * Drops the cached frame once nobody watches the rendition any more.
+     */
+    void releaseIfIdle() {
+        if (listeners.isEmpty()) {
+            releaseLatest();
+        }
+    }
+
+    /**
+     * Ends the feed with its stream: notifies listeners and frees every frame it holds.
+     */
+    void end() {
+        ended = true;
+        for (FrameListener listener : listeners) {
+            listener.onStreamEnded();
+        }
+        listeners.clear();
+        releasePendingSource();
+        releaseLatest();
+    }
+
+    private void releaseLatest() {
+        Frame frame = latest.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    private void releasePendingSource() {
+        Frame frame = pendingSource.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scales and re-encodes frames for the lower {@link Rendition}s.
+ *
+ * Work runs on the bounded {@code renditionExecutor}, never on the ingest thread. Each
+ * stream/rendition pair has at most one task queued (see {@link RenditionFeed}), so a slow
+ * pool skips source frames instead of queueing them. Images are decoded and encoded through
+ * in-memory streams only; ImageIO's disk cache is never touched.
+ */
+@Component
+public class RenditionTranscoder {
+
+    /** Per-thread encoder state: the JPEG writer and a reusable output buffer. */
+    private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(Encoder::new);
+
+    private final FrameBufferPool bufferPool;
+    private final ExecutorService executor;
+
+    private final AtomicLong transcodedFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong failedFrames = new AtomicLong();
+
+    public RenditionTranscoder(FrameBufferPool bufferPool,
+                               @Qualifier("renditionExecutor") ExecutorService executor) {
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a transcoding task on the pool.
+     * @return false if the pool is saturated or shutting down.
+     */
+    boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Produces the rendition of one source frame.
+     * @param source A published frame; the caller keeps its reference.
+     * @return A pooled frame owned by the caller holding the scaled JPEG (not yet stamped),
+     *         or null if the source is already no taller than the rendition.
+     * @throws IOException If the source is not a decodable JPEG.
+     */
+    Frame transcode(Frame source, Rendition rendition) throws IOException {
+        // ImageIO.read closes the stream itself
+        ImageInputStream input = new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(source.array(), source.dataOffset(), source.length()));
+        BufferedImage image = ImageIO.read(input);
+        if (image == null) {
+            throw new IOException("Frame is not a readable JPEG");
+        }
+        if (image.getHeight() <= rendition.maxHeight()) {
+            return null;
+        }
+
+        int height = rendition.maxHeight();
+        int width = Math.max(1, Math.round(image.getWidth() * (float) height / image.getHeight()));
+        int type = image.getType() == BufferedImage.TYPE_BYTE_GRAY ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Encoder encoder = ENCODERS.get();
+        int length = encoder.encode(scaled, rendition.jpegQuality());
+        Frame frame = bufferPool.acquire(length);
+        System.arraycopy(encoder.buffer.array(), 0, frame.array(), frame.dataOffset(), length);
+        frame.setLength(length);
+        return frame;
+    }
+
+    void recordTranscoded() {
+        transcodedFrames.incrementAndGet();
+    }
+
+    void recordSkipped() {
+        skippedFrames.incrementAndGet();
+    }
+
+    void recordFailed() {
+        failedFrames.incrementAndGet();
+    }
+
+    /**
+     * @return Source frames scaled and re-encoded into a rendition.
+     */
+    public long getTranscodedFrames() {
+        return transcodedFrames.get();
+    }
+
+    /**
+     * @return Source frames a rendition skipped because a newer one arrived or the pool was full.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    /**
+     * @return Source frames that could not be decoded or encoded.
+     */
+    public long getFailedFrames() {
+        return failedFrames.get();
+    }
+
+    private static final class Encoder {
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        private final ImageWriteParam param = writer.getDefaultWriteParam();
+        private final ExposedBuffer buffer = new ExposedBuffer();
+
+        Encoder() {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
+
+        int encode(BufferedImage image, float quality) throws IOException {
+            buffer.reset();
+            param.setCompressionQuality(quality);
+            try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+            return buffer.size();
+        }
+    }
+
+    /** Gives access to the written bytes without the copy made by {@link #toByteArray()}. */
+    private static final class ExposedBuffer extends ByteArrayOutputStream {
+        ExposedBuffer() {
+            super(65536);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package service;
+
+/**
+ * An ingested frame that is still encrypted, handed to {@link StreamManager#offerSealed} when
+ * decryption is lazy ({@code stream.decrypt.lazy.enabled}). The stream keeps only the newest one and
+ * opens it when a reader needs it; a frame superseded before that is discarded unopened.
+ *
+ * Exactly one of {@link #discard()} or {@link #open()} is called. After a successful open,
+ * {@link #published(boolean)} reports what became of the frame; after a failed one, {@link #failed(Exception)}.
+ */
+public interface SealedFrame {
+
+    /**
+     * Decodes and decrypts the frame into a pooled {@link Frame} and frees the ciphertext.
+     * Runs on the frame-decrypt pool or on a reader's thread, never on the ingest thread.
+     * @return The plaintext frame with one reference owned by the caller.
+     */
+    Frame open() throws Exception;
+
+    /**
+     * @param published false if the frame repeated the previous one, or the stream had ended.
+     */
+    void published(boolean published);
+
+    /**
+     * Reports that {@link #open()} threw; the ciphertext has been freed.
+     */
+    void failed(Exception e);
+
+    /**
+     * Frees the ciphertext of a frame nobody needed.
+     */
+    void discard();
+}
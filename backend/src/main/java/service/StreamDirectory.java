@@ -0,0 +1,168 @@
+package service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached, read-mostly views of the live streams for lobby pages: the directory of active
+ * streams and a still of each stream's latest frame.
+ *
+ * The directory is rebuilt once per {@code stream.directory.refresh-ms} by a single timer
+ * thread and kept pre-serialized, so a request only hands out the same byte array. Snapshots
+ * are copied out of the latest frame about once per interval per stream (requests racing on a
+ * stale still may each capture one, the newest is kept), and only for streams someone asked
+ * for. Requests therefore never scan viewers, and rarely touch frame buffers.
+ */
+@Component
+public class StreamDirectory {
+
+    /**
+     * One row of the directory.
+     * @param fps Frames received per second over the last refresh interval
+     * @param lastFrameAgeMs Age of the latest frame when the directory was refreshed; -1 before the first frame
+     */
+    public record StreamInfo(String username, int viewers, double fps, long lastFrameAgeMs) {
+    }
+
+    /**
+     * The directory as served: the JSON array of {@link StreamInfo} rows and a tag that changes with it.
+     */
+    public record Listing(byte[] json, String etag) {
+    }
+
+    /**
+     * A still of a stream.
+     * @param etag Identifies the frame content: changes whenever a different frame is captured
+     * @param timestampMillis Publish time of the frame
+     */
+    public record Snapshot(byte[] jpeg, String etag, long timestampMillis, long capturedNanos) {
+    }
+
+    private final StreamManager streamManager;
+    private final ViewerRegistry viewerRegistry;
+    private final ObjectMapper objectMapper;
+    private final long refreshNanos;
+
+    private volatile Listing listing = new Listing("[]".getBytes(StandardCharsets.US_ASCII), "\"empty\"");
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    /** Frame count and time seen at the previous refresh, per stream; timer thread only. */
+    private final Map<String, long[]> lastSeen = new HashMap<>();
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stream-directory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StreamDirectory(StreamManager streamManager, ViewerRegistry viewerRegistry, ObjectMapper objectMapper,
+                           @Value("${stream.directory.refresh-ms:1000}") long refreshMs) {
+        this.streamManager = streamManager;
+        this.viewerRegistry = viewerRegistry;
+        this.objectMapper = objectMapper;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(refreshMs);
+        refresh();
+        refresher.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The active streams as of the last refresh.
+     */
+    public Listing listing() {
+        return listing;
+    }
+
+    /**
+     * Returns a recent still of a stream, capturing a new one if the cached still is older than
+     * the refresh interval and the stream has published since.
+     * @param username The ID of the stream.
+     * @return The still, or null if the stream is not active or has no frame yet.
+     */
+    public Snapshot snapshot(String username) {
+        Snapshot cached = snapshots.get(username);
+        long now = System.nanoTime();
+        if (cached != null && now - cached.capturedNanos() < refreshNanos) {
+            return cached;
+        }
+        // Captured outside the map's lock: with lazy decryption, acquiring the frame may decrypt it
+        Frame frame = streamManager.acquireLatestFrame(username);
+        if (frame == null) {
+            if (cached != null) {
+                snapshots.remove(username, cached);
+            }
+            return null;
+        }
+        Snapshot captured;
+        try {
+            // Identical content (e.g. a keep-alive republish) keeps its tag, so pollers get a 304
+            String etag = frame.contentHash() != 0
+                    ? "\"" + Long.toHexString(frame.contentHash()) + "\""
+                    : "\"" + frame.timestampMillis() + "-" + frame.sequence() + "\"";
+            if (cached != null && cached.etag().equals(etag)) {
+                captured = new Snapshot(cached.jpeg(), etag, cached.timestampMillis(), now);
+            } else {
+                byte[] jpeg = new byte[frame.length()];
+                System.arraycopy(frame.array(), frame.dataOffset(), jpeg, 0, jpeg.length);
+                captured = new Snapshot(jpeg, etag, frame.timestampMillis(), now);
+            }
+        } finally {
+            frame.release();
+        }
+        // A concurrent request may have installed a newer capture meanwhile; keep that one
+        return snapshots.merge(username, captured,
+                (current, candidate) -> current.capturedNanos() - candidate.capturedNanos() > 0 ? current : candidate);
+    }
+
+    private void refresh() {
+        try {
+            Map<String, Integer> viewers = viewerRegistry.countViewersByStream();
+            long nowNanos = System.nanoTime();
+            long nowMillis = System.currentTimeMillis();
+            List<StreamInfo> streams = new ArrayList<>();
+
+            for (String username : streamManager.activeStreams()) {
+                // Counters only: with lazy decryption, reading the frame would decrypt it
+                StreamManager.IngestStatus status = streamManager.ingestStatus(username);
+                if (status == null) {
+                    continue;
+                }
+                long frames = status.frames();
+                long ageMs = status.lastFrameMillis() == 0 ? -1 : Math.max(0, nowMillis - status.lastFrameMillis());
+
+                long[] previous = lastSeen.put(username, new long[] {frames, nowNanos});
+                double fps = 0;
+                if (previous != null && frames >= previous[0] && nowNanos > previous[1]) {
+                    fps = Math.round((frames - previous[0]) * 1e10 / (nowNanos - previous[1])) / 10.0;
+                }
+                streams.add(new StreamInfo(username, viewers.getOrDefault(username, 0), fps, ageMs));
+            }
+            streams.sort((a, b) -> a.username().compareTo(b.username()));
+
+            lastSeen.keySet().removeIf(username -> !streamManager.isStreaming(username));
+            snapshots.keySet().removeIf(username -> !streamManager.isStreaming(username));
+
+            byte[] json = objectMapper.writeValueAsBytes(streams);
+            listing = new Listing(json, "\"" + Integer.toHexString(Arrays.hashCode(json)) + "\"");
+        } catch (JsonProcessingException | RuntimeException e) {
+            System.err.println("Stream directory refresh failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+}
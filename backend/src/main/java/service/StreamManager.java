@@ -1,46 +1,377 @@
 package service;
 
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Arrays;
+import java.util.Set;
 
 /**
  * Manages the latest decrypted video frame for each active stream.
  * This is the bridge between the WebSocket (Host) and the REST endpoint (Viewer).
+ *
+ * Frames are pooled and reference counted (see {@link Frame}): the stream holds one
+ * reference to its latest frame, and each viewer holds one while it writes the frame out.
+ * A replaced frame goes back to the {@link FrameBufferPool} once the last viewer is done with it.
+ *
+ * Every published frame is stamped with a per-stream sequence number and pushed to the
+ * stream's {@link FrameListener}s, so readers wake only when a new version exists.
+ * Streams also keep a short off-heap history ({@link FrameRing}) for catch-up and rewind.
+ *
+ * Viewers can subscribe to a scaled {@link Rendition} instead of the source frames. Each
+ * rendition's latest frame is cached next to the source frame in the stream, and produced
+ * by the {@link RenditionTranscoder} only while the rendition has subscribers.
+ *
+ * Every ingested frame is fingerprinted once ({@link Frame#contentHash()}). A frame that is
+ * byte-identical to the previous one is dropped without a new version, so listeners (viewers,
+ * recorder, renditions) do no work for static scenes; the same content is republished once per
+ * {@code stream.dedupe.keep-alive-ms} so MJPEG clients keep receiving data. Frames relayed from
+ * an origin ({@link #publishRelayed}) are not deduplicated again: the origin already did, and
+ * its keep-alive repeats must reach the edge's viewers.
+ *
+ * With {@code stream.decrypt.lazy.enabled} the ingest handler hands over frames still encrypted
+ * ({@link #offerSealed}). The stream keeps only the newest one, and it is decrypted on the
+ * bounded {@code frameDecryptExecutor} only while the stream has readers (viewers, recorder,
+ * renditions), or on the reader's own thread when a snapshot or a new viewer needs the current
+ * frame. Frames superseded before anyone reads them are never decrypted, so an unwatched stream
+ * costs no decryption at all. History then only holds frames that were decrypted.
  */
 @Service
 public class StreamManager {
 
-    private final Map<String, byte[]> activeStreams = new ConcurrentHashMap<>();
+    private final Map<String, LiveStream> activeStreams = new ConcurrentHashMap<>();
+    private final FrameBufferPool bufferPool;
+    private final FrameRingAllocator ringAllocator;
+    private final RenditionTranscoder transcoder;
+    private final boolean dedupe;
+    private final long keepAliveNanos;
+    private final boolean lazyDecryption;
+    private final Executor decryptExecutor;
+
+    /**
+     * Frames received from a streamer, whether or not they were decrypted.
+     * @param lastFrameMillis Wall-clock arrival time of the newest one; 0 before the first frame
+     */
+    public record IngestStatus(long frames, long lastFrameMillis) {
+    }
+
+    public StreamManager(FrameBufferPool bufferPool, FrameRingAllocator ringAllocator,
+                         RenditionTranscoder transcoder,
+                         @Value("${stream.dedupe.enabled:true}") boolean dedupe,
+                         @Value("${stream.dedupe.keep-alive-ms:5000}") long keepAliveMs,
+                         @Value("${stream.decrypt.lazy.enabled:false}") boolean lazyDecryption,
+                         @Qualifier("frameDecryptExecutor") Executor decryptExecutor) {
+        this.bufferPool = bufferPool;
+        this.ringAllocator = ringAllocator;
+        this.transcoder = transcoder;
+        this.dedupe = dedupe;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMs);
+        this.lazyDecryption = lazyDecryption;
+        this.decryptExecutor = decryptExecutor;
+    }
+
+    /**
+     * @return true if ingest should hand frames over encrypted with {@link #offerSealed}.
+     */
+    public boolean isLazyDecryption() {
+        return lazyDecryption;
+    }
 
     /**
      * Registers a stream as active (called when WebSocket connects).
      * @param username The ID of the stream.
      */
     public void registerStream(String username) {
-        activeStreams.put(username, new byte[0]);
+        register(username);
+    }
+
+    /**
+     * Registers a stream as active for a caller that publishes into it directly (the relay).
+     * @param username The ID of the stream.
+     * @return The new stream, for {@link #publishRelayed} and {@link #removeStream(String, LiveStream)}.
+     */
+    LiveStream register(String username) {
+        LiveStream stream = new LiveStream(username, ringAllocator.allocate(), transcoder);
+        endStream(activeStreams.put(username, stream));
         System.out.println("Stream registered: " + username);
+        return stream;
+    }
+
+    /**
+     * Borrows a pooled frame to decrypt the next frame of a stream into.
+     * The caller must either publish it with {@link #updateFrame(String, Frame)} or release it.
+     * @param minCapacity Upper bound of the frame size (the ciphertext length).
+     * @return A frame with one reference owned by the caller.
+     */
+    public Frame allocateFrame(int minCapacity) {
+        return bufferPool.acquire(minCapacity);
     }
 
     /**
-     * Updates the latest frame for a given username.
+     * Publishes a new frame version for a given username and notifies its listeners.
+     * The MJPEG part headers are encoded here, once, for all viewers.
+     * Ownership of the caller's reference passes to the stream; the previous frame is released.
      * @param username The ID of the stream.
-     * @param frameBytes The raw decrypted JPEG byte array.
+     * @param frame The decrypted JPEG frame.
+     * @return false if the frame was not published: the stream is inactive, or the frame
+     *         repeats the previous one and the keep-alive interval has not passed yet.
+     */
+    public boolean updateFrame(String username, Frame frame) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null) {
+            frame.release();
+            return false;
+        }
+        stream.received();
+        return publish(stream, frame, true);
+    }
+
+    /**
+     * Publishes a frame relayed from an origin into the stream the relay registered, without
+     * dropping repeats. Ownership of the caller's reference passes to the stream.
+     * @param stream The stream returned by {@link #register}.
+     * @param frame The JPEG frame as the origin sent it.
+     * @return false if the stream has ended, for example because a local streamer replaced it.
      */
-    public void updateFrame(String username, byte[] frameBytes) {
-        // Note: Creating a copy of the array is good practice if the source array 
-        // could be modified elsewhere, but for a one-time copy from WS handler, it's fine.
-        activeStreams.put(username, frameBytes);
+    boolean publishRelayed(LiveStream stream, Frame frame) {
+        // Hold the open loop's slot while publishing, so endStream cannot release the stream meanwhile
+        if (!stream.openRequests.compareAndSet(0, 1)) {
+            frame.release();
+            return false;
+        }
+        try {
+            if (activeStreams.get(stream.username) != stream) {
+                frame.release();
+                return false;
+            }
+            stream.received();
+            return publish(stream, frame, false);
+        } finally {
+            stream.openRequests.set(0);
+        }
     }
 
     /**
-     * Gets the latest frame for a given username.
+     * Hands over an ingested frame that has not been decrypted yet (lazy decryption).
+     * It replaces any older undecrypted frame, which is discarded, and is opened right away on
+     * the decrypt pool if the stream has readers. Never decrypts on the calling thread.
      * @param username The ID of the stream.
-     * @return The latest JPEG byte array, or null if stream is inactive.
+     * @param sealed The encrypted frame; ownership passes to the stream.
      */
-    public byte[] getLatestFrame(String username) {
-        return activeStreams.get(username);
+    public void offerSealed(String username, SealedFrame sealed) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null) {
+            sealed.discard();
+            return;
+        }
+        stream.received();
+        SealedFrame superseded = stream.sealed.getAndSet(sealed);
+        if (superseded != null) {
+            superseded.discard();
+        }
+        if (activeStreams.get(username) != stream) {
+            // Lost a race with removeStream; endStream may already have drained the slot
+            discardSealed(stream);
+        } else if (stream.hasReaders()) {
+            requestOpen(stream, false);
+        }
+    }
+
+    /**
+     * @param dropRepeats Drop a frame that repeats the previous one within the keep-alive interval.
+     */
+    private boolean publish(LiveStream stream, Frame frame, boolean dropRepeats) {
+        long now = System.nanoTime();
+        if (dedupe) {
+            long hash = FrameHash.hash(frame.array(), frame.dataOffset(), frame.length());
+            frame.setContentHash(hash);
+            if (dropRepeats && hash == stream.lastContentHash && frame.length() == stream.lastLength
+                    && now - stream.lastPublishedNanos < keepAliveNanos) {
+                frame.release();
+                return false;
+            }
+            stream.lastContentHash = hash;
+            stream.lastLength = frame.length();
+        }
+        stream.lastPublishedNanos = now;
+
+        frame.stamp(stream.nextSequence(), System.currentTimeMillis());
+        MjpegPart.encodeHeaders(frame);
+        WatchHeader.encode(frame, Rendition.FULL);
+        if (stream.ring != null) {
+            stream.ring.append(frame);
+        }
+
+        Frame previous = stream.latest.getAndSet(frame);
+        if (previous != null) {
+            previous.release();
+        }
+
+        for (FrameListener listener : stream.listeners) {
+            try {
+                listener.onFrame(frame);
+            } catch (RuntimeException e) {
+                System.err.println("Frame listener failed for " + stream.username + ": " + e.getMessage());
+            }
+        }
+        for (RenditionFeed feed : stream.renditions.values()) {
+            feed.offer(frame);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the latest frame for a given username and takes a reference to it.
+     * The caller must call {@link Frame#release()} when it has finished reading the frame.
+     * @param username The ID of the stream.
+     * @return The latest frame, or null if the stream is inactive or has not produced a frame yet.
+     */
+    public Frame acquireLatestFrame(String username) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null) {
+            return null;
+        }
+        if (stream.sealed.get() != null) {
+            requestOpen(stream, true);
+        }
+        return acquireLatest(stream.latest);
+    }
+
+    /**
+     * Reports how many frames a stream has received without touching (or decrypting) its frames.
+     * @param username The ID of the stream.
+     * @return The status, or null if the stream is not active.
+     */
+    public IngestStatus ingestStatus(String username) {
+        LiveStream stream = activeStreams.get(username);
+        return stream == null ? null : new IngestStatus(stream.receivedFrames, stream.lastReceivedMillis);
+    }
+
+    /**
+     * Reads the stream's history from a point in time, e.g. for a viewer asking for the last N seconds.
+     * Frames are copied out of the off-heap ring; the caller must release each of them.
+     * @param username The ID of the stream.
+     * @param sinceTimestampMillis Wall-clock time of the oldest frame wanted.
+     * @return Frames oldest first; empty if the stream is inactive or keeps no history.
+     */
+    public List<Frame> recentFramesSince(String username, long sinceTimestampMillis) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null || stream.ring == null) {
+            return Collections.emptyList();
+        }
+        return stream.ring.readSince(sinceTimestampMillis, bufferPool);
+    }
+
+    /**
+     * Reads the stream's history after a known frame, e.g. for a client resuming from its last sequence.
+     * Frames are copied out of the off-heap ring; the caller must release each of them.
+     * @param username The ID of the stream.
+     * @param afterSequence Last sequence the reader already has.
+     * @return Frames oldest first; empty if the stream is inactive or keeps no history.
+     */
+    public List<Frame> recentFramesAfter(String username, long afterSequence) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null || stream.ring == null) {
+            return Collections.emptyList();
+        }
+        return stream.ring.readAfter(afterSequence, bufferPool);
+    }
+
+    /**
+     * Subscribes a listener to every future frame of a stream.
+     * If the stream already has a frame, it is delivered immediately so new viewers don't start cold.
+     * @param username The ID of the stream.
+     * @param listener The listener to notify.
+     * @return false if the stream is not active.
+     */
+    public boolean subscribe(String username, FrameListener listener) {
+        return subscribe(username, Rendition.FULL, listener);
+    }
+
+    /**
+     * Subscribes a listener to every future frame of one rendition of a stream.
+     * The first subscriber of a scaled rendition starts its transcoding, beginning with the
+     * current source frame.
+     * @param username The ID of the stream.
+     * @param rendition The rendition to receive.
+     * @param listener The listener to notify.
+     * @return false if the stream is not active.
+     */
+    public boolean subscribe(String username, Rendition rendition, FrameListener listener) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null) {
+            return false;
+        }
+        RenditionFeed feed = stream.renditions.get(rendition);
+        List<FrameListener> listeners = feed == null ? stream.listeners : feed.listeners;
+        listeners.add(listener);
+        if (activeStreams.get(username) != stream) {
+            // Lost a race with removeStream; endStream may already have run
+            listeners.remove(listener);
+            listener.onStreamEnded();
+            return false;
+        }
+
+        if (stream.sealed.get() != null) {
+            // Catch up on the frame nobody was watching, on the subscriber's thread
+            requestOpen(stream, true);
+        }
+        Frame current = acquireLatest(feed == null ? stream.latest : feed.latest);
+        if (current != null) {
+            try {
+                listener.onFrame(current);
+            } finally {
+                current.release();
+            }
+        }
+        if (feed != null) {
+            Frame source = acquireLatest(stream.latest);
+            if (source != null) {
+                try {
+                    feed.offer(source);
+                } finally {
+                    source.release();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a listener added with {@link #subscribe(String, FrameListener)}.
+     * @param username The ID of the stream.
+     * @param listener The listener to remove.
+     */
+    public void unsubscribe(String username, FrameListener listener) {
+        unsubscribe(username, Rendition.FULL, listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #subscribe(String, Rendition, FrameListener)}.
+     * When the last listener of a scaled rendition leaves, its transcoding stops.
+     * @param username The ID of the stream.
+     * @param rendition The rendition the listener subscribed to.
+     * @param listener The listener to remove.
+     */
+    public void unsubscribe(String username, Rendition rendition, FrameListener listener) {
+        LiveStream stream = activeStreams.get(username);
+        if (stream == null) {
+            return;
+        }
+        RenditionFeed feed = stream.renditions.get(rendition);
+        if (feed == null) {
+            stream.listeners.remove(listener);
+        } else if (feed.listeners.remove(listener)) {
+            feed.releaseIfIdle();
+        }
     }
 
     /**
@@ -48,7 +379,26 @@ public class StreamManager {
      * @param username The ID of the stream to remove.
      */
     public void removeStream(String username) {
-        activeStreams.remove(username);
+        endStream(activeStreams.remove(username));
+    }
+
+    /**
+     * Removes a stream only if it is still the one registered under its ID, so a caller ending
+     * late does not remove a stream that has since replaced it.
+     * @param username The ID of the stream.
+     * @param expected The stream returned by {@link #register}.
+     */
+    void removeStream(String username, LiveStream expected) {
+        if (activeStreams.remove(username, expected)) {
+            endStream(expected);
+        }
+    }
+
+    /**
+     * @return The IDs of all active streams; a live view that reflects later registrations and removals.
+     */
+    public Set<String> activeStreams() {
+        return Collections.unmodifiableSet(activeStreams.keySet());
     }
 
     /**
@@ -59,4 +409,97 @@ public class StreamManager {
     public boolean isStreaming(String username) {
         return activeStreams.containsKey(username);
     }
-}
\ No newline at end of file
+
+    private Frame acquireLatest(AtomicReference<Frame> latest) {
+        while (true) {
+            Frame frame = latest.get();
+            if (frame == null) {
+                return null;
+            }
+            if (frame.tryRetain()) {
+                // The frame may have been recycled into another stream between get() and tryRetain()
+                if (latest.get() == frame) {
+                    return frame;
+                }
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * Asks for the stream's undecrypted frame to be opened. Only one open loop runs per stream,
+     * which keeps its frames in order; a request made while one runs makes it look again.
+     * @param inline Run the loop on the calling thread if none is running, instead of on the pool.
+     */
+    private void requestOpen(LiveStream stream, boolean inline) {
+        if (stream.openRequests.getAndIncrement() != 0) {
+            return;
+        }
+        if (inline) {
+            openSealed(stream);
+            return;
+        }
+        try {
+            decryptExecutor.execute(() -> openSealed(stream));
+        } catch (RejectedExecutionException e) {
+            // Pool saturated: the frame stays parked, and the next ingested frame asks again
+            stream.openRequests.set(0);
+        }
+    }
+
+    private void openSealed(LiveStream stream) {
+        List<Map.Entry<SealedFrame, Exception>> failures = null;
+        int missed = 1;
+        do {
+            SealedFrame sealed;
+            while ((sealed = stream.sealed.getAndSet(null)) != null) {
+                Frame frame;
+                try {
+                    frame = sealed.open();
+                } catch (Exception e) {
+                    if (failures == null) {
+                        failures = new ArrayList<>();
+                    }
+                    failures.add(Map.entry(sealed, e));
+                    continue;
+                }
+                sealed.published(publish(stream, frame, true));
+            }
+            missed = stream.openRequests.addAndGet(-missed);
+        } while (missed != 0);
+
+        // Reported only now: a failure may close the stream, and endStream waits for this loop
+        if (failures != null) {
+            failures.forEach(failure -> failure.getKey().failed(failure.getValue()));
+        }
+    }
+
+    private void discardSealed(LiveStream stream) {
+        SealedFrame sealed = stream.sealed.getAndSet(null);
+        if (sealed != null) {
+            sealed.discard();
+        }
+    }
+
+    private void endStream(LiveStream stream) {
+        if (stream == null) {
+            return;
+        }
+        // Take the open loop's slot for good, waiting out a decrypt in progress, so nothing
+        // publishes into the stream once its ring and latest frame are released below
+        while (!stream.openRequests.compareAndSet(0, 1)) {
+            Thread.yield();
+        }
+        discardSealed(stream);
+        for (FrameListener listener : stream.listeners) {
+            listener.onStreamEnded();
+        }
+        stream.listeners.clear();
+        stream.renditions.values().forEach(RenditionFeed::end);
+        ringAllocator.release(stream.ring);
+        Frame frame = stream.latest.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-stream meters, tagged {@code stream=<username>} and exported through the Actuator
+ * Prometheus endpoint. Meters are created when a stream is registered and removed when it
+ * ends, so the number of time series follows the number of live streams.
+ *
+ * Counters and timers are lock-free; timers publish fixed-bucket histograms, so latency
+ * percentiles are computed at query time and can be aggregated across nodes.
+ */
+@Component
+public class StreamMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, StreamMeters> streams = new ConcurrentHashMap<>();
+
+    /** Returned for streams that are not registered; a composite registry without children records nothing. */
+    private final StreamMeters untracked = new StreamMeters(new CompositeMeterRegistry(), "");
+
+    public StreamMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Creates the meters of a newly registered stream, replacing those of a previous stream with the same name.
+     * The previous meters leave the registry first; otherwise the registry would hand them back for the same
+     * name and tags, and the new stream would record into meters that are then removed.
+     * @return The stream's meters; pass them to {@link #removeStream(String, StreamMeters)} when it ends.
+     */
+    public StreamMeters registerStream(String username) {
+        return streams.compute(username, (name, previous) -> {
+            if (previous != null) {
+                previous.remove();
+            }
+            return new StreamMeters(registry, name);
+        });
+    }
+
+    /**
+     * @return The meters of a live stream, or meters that record nothing if it is not registered.
+     */
+    public StreamMeters forStream(String username) {
+        return streams.getOrDefault(username, untracked);
+    }
+
+    /**
+     * Removes a stream's meters, unless a newer stream with the same name has replaced them.
+     * @param meters The meters returned when the ending stream was registered.
+     */
+    public void removeStream(String username, StreamMeters meters) {
+        if (streams.remove(username, meters)) {
+            meters.remove();
+        }
+    }
+
+    static Timer.Builder latencyTimer(String name, String description, Duration max) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(max);
+    }
+
+    public static final class StreamMeters {
+        private final MeterRegistry registry;
+        private final Timer decryptTime;
+        private final Timer frameInterval;
+        private final Counter ingestFrames;
+        private final Counter ingestBytes;
+        private final Counter duplicateFrames;
+        private final Counter undecryptedFrames;
+        private final Timer sendTime;
+        private final Counter egressBytes;
+        private final Counter droppedFrames;
+        private final AtomicInteger viewers = new AtomicInteger();
+        private final Gauge viewerGauge;
+        private long lastArrivalNanos;
+
+        private StreamMeters(MeterRegistry registry, String username) {
+            this.registry = registry;
+            decryptTime = latencyTimer("stream.decrypt", "Time to decrypt one ingested frame", Duration.ofSeconds(1))
+                    .tag("stream", username).register(registry);
+            frameInterval = latencyTimer("stream.frame.interval", "Time between two ingested frames", Duration.ofSeconds(10))
+                    .tag("stream", username).register(registry);
+            ingestFrames = Counter.builder("stream.ingest.frames").tag("stream", username).register(registry);
+            ingestBytes = Counter.builder("stream.ingest.bytes").baseUnit("bytes").tag("stream", username).register(registry);
+            duplicateFrames = Counter.builder("stream.ingest.duplicate.frames")
+                    .description("Ingested frames identical to the previous one, not republished")
+                    .tag("stream", username).register(registry);
+            undecryptedFrames = Counter.builder("stream.ingest.undecrypted.frames")
+                    .description("Ingested frames superseded before any reader needed them, never decrypted")
+                    .tag("stream", username).register(registry);
+            sendTime = latencyTimer("stream.viewer.send", "Time to hand one frame to a viewer connection", Duration.ofSeconds(10))
+                    .tag("stream", username).register(registry);
+            egressBytes = Counter.builder("stream.egress.bytes").baseUnit("bytes").tag("stream", username).register(registry);
+            droppedFrames = Counter.builder("stream.viewer.dropped.frames")
+                    .description("Frames skipped by lagging viewers")
+                    .tag("stream", username).register(registry);
+            viewerGauge = Gauge.builder("stream.viewers", viewers, AtomicInteger::get)
+                    .tag("stream", username).register(registry);
+        }
+
+        /**
+         * Records one decrypted frame. Called from the stream's ingest thread only.
+         * @param bytes Plaintext size.
+         * @param decryptNanos Time spent decrypting it.
+         */
+        public void recordIngest(int bytes, long decryptNanos) {
+            recordDecrypt(decryptNanos);
+            recordRelayed(bytes);
+        }
+
+        /**
+         * Records one frame received but left encrypted for now (lazy decryption). Called from the ingest thread only.
+         * @param bytes Ciphertext size.
+         */
+        public void recordSealed(int bytes) {
+            recordRelayed(bytes);
+        }
+
+        /**
+         * Records the decryption of a frame, on whichever thread opened it.
+         */
+        public void recordDecrypt(long decryptNanos) {
+            decryptTime.record(decryptNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Records a frame that was discarded without being decrypted.
+         */
+        public void recordUndecrypted() {
+            undecryptedFrames.increment();
+        }
+
+        /**
+         * Records one frame received already decrypted, from an origin node. Called from the relay thread only.
+         */
+        public void recordRelayed(int bytes) {
+            long now = System.nanoTime();
+            if (lastArrivalNanos != 0) {
+                frameInterval.record(now - lastArrivalNanos, TimeUnit.NANOSECONDS);
+            }
+            lastArrivalNanos = now;
+            ingestFrames.increment();
+            ingestBytes.increment(bytes);
+        }
+
+        /**
+         * Records one ingested frame that was suppressed as a duplicate. Called from the publishing thread only.
+         */
+        public void recordDuplicate() {
+            duplicateFrames.increment();
+        }
+
+        void recordDelivery(int bytes, long sendNanos) {
+            sendTime.record(sendNanos, TimeUnit.NANOSECONDS);
+            egressBytes.increment(bytes);
+        }
+
+        void recordDroppedFrame() {
+            droppedFrames.increment();
+        }
+
+        void viewerJoined() {
+            viewers.incrementAndGet();
+        }
+
+        void viewerLeft() {
+            viewers.decrementAndGet();
+        }
+
+        private void remove() {
+            for (Meter meter : List.of(decryptTime, frameInterval, ingestFrames, ingestBytes,
+                    duplicateFrames, undecryptedFrames, sendTime, egressBytes, droppedFrames, viewerGauge)) {
+                registry.remove(meter);
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Optional on-disk recording of live streams ({@code stream.recording.enabled}).
+ *
+ * Each stream is written to append-only segments under
+ * {@code <stream.recording.directory>/<username>/}: a {@code .mjpg} data file holding the
+ * encoded MJPEG parts back to back, and an {@code .idx} file of fixed-size records
+ * (timestamp, sequence, offset, length) that maps time to position. A segment is rolled
+ * once its data file exceeds {@code stream.recording.segment-bytes}.
+ *
+ * The ingest path only retains the frame and offers it to a bounded queue; a single
+ * writer thread drains the queue in batches with gathering writes. When the writer falls
+ * behind, frames are dropped from the recording rather than slowing down ingest.
+ */
+@Component
+public class StreamRecorder {
+
+    public static final String DATA_SUFFIX = ".mjpg";
+    public static final String INDEX_SUFFIX = ".idx";
+    /** timestamp (8) + sequence (8) + offset (8) + length (4) */
+    public static final int INDEX_RECORD_BYTES = 28;
+
+    private static final int MAX_BATCH = 64;
+    /**
+     * Replay maps segments and addresses them with int offsets, and a segment is only rolled
+     * once it has passed the limit, so the limit leaves room for one more batch below 2 GiB.
+     */
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentBytes;
+    private final StreamManager streamManager;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final Thread writerThread;
+
+    public StreamRecorder(StreamManager streamManager,
+                          @Value("${stream.recording.enabled:false}") boolean enabled,
+                          @Value("${stream.recording.directory:recordings}") String directory,
+                          @Value("${stream.recording.segment-bytes:67108864}") long segmentBytes,
+                          @Value("${stream.recording.queue-frames:256}") int queueFrames) {
+        if (segmentBytes <= 0 || segmentBytes > MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("stream.recording.segment-bytes must be from 1 to "
+                    + MAX_SEGMENT_BYTES + ", got: " + segmentBytes);
+        }
+        this.streamManager = streamManager;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.queue = new ArrayBlockingQueue<>(queueFrames);
+        this.writerThread = new Thread(this::writeLoop, "stream-recorder");
+        this.writerThread.setDaemon(true);
+        if (enabled) {
+            writerThread.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts recording a newly registered stream, if recording is enabled.
+     * @param username The ID of the stream.
+     */
+    public void startRecording(String username) {
+        if (enabled) {
+            streamManager.subscribe(username, new Recording(username));
+        }
+    }
+
+    /**
+     * Lists the recorded segments of a stream, oldest first.
+     * @param username The ID of the stream.
+     * @return Paths of the segment data files; empty if nothing was recorded.
+     */
+    public List<Path> listSegments(String username) throws IOException {
+        Path streamDirectory = streamDirectory(username);
+        if (!Files.isDirectory(streamDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(streamDirectory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(DATA_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * @return Frames left out of recordings because the writer could not keep up.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private Path streamDirectory(String username) {
+        String encoded = URLEncoder.encode(username, StandardCharsets.UTF_8);
+        if (encoded.startsWith(".")) {
+            encoded = "_" + encoded; // never "." or ".."
+        }
+        return directory.resolve(encoded);
+    }
+
+    /**
+     * Subscribed to one stream; runs on the ingest thread and must not block.
+     */
+    private final class Recording implements FrameListener {
+        private final String username;
+
+        Recording(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public void onFrame(Frame frame) {
+            if (!frame.tryRetain()) {
+                return;
+            }
+            if (!queue.offer(new Entry(username, frame))) {
+                frame.release();
+                droppedFrames.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onStreamEnded() {
+            // The end marker must not be lost, so this is the one place that may wait for space
+            try {
+                if (!queue.offer(new Entry(username, null), 1, TimeUnit.SECONDS)) {
+                    System.err.println("Recorder queue full, segment of " + username + " left open");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A frame to append, or (frame == null) the end of a stream. */
+    private record Entry(String username, Frame frame) {
+    }
+
+    private void writeLoop() {
+        Map<String, SegmentWriter> writers = new HashMap<>();
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(writers, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Entry entry : batch) {
+                if (entry.frame() != null) {
+                    entry.frame().release();
+                }
+            }
+            writers.values().forEach(SegmentWriter::close);
+        }
+    }
+
+    /**
+     * Writes a batch in queue order. Frames are grouped per stream so each segment gets one
+     * gathering write for data and one for the index, but a stream's frames are written and its
+     * segment closed as soon as its end marker comes up, so a session that ends and restarts
+     * within one batch gets a segment of its own.
+     */
+    private void writeBatch(Map<String, SegmentWriter> writers, List<Entry> batch) {
+        Map<String, List<Frame>> pending = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            if (entry.frame() != null) {
+                pending.computeIfAbsent(entry.username(), k -> new ArrayList<>()).add(entry.frame());
+                continue;
+            }
+            List<Frame> frames = pending.remove(entry.username());
+            if (frames != null) {
+                append(writers, entry.username(), frames);
+            }
+            SegmentWriter writer = writers.remove(entry.username());
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        pending.forEach((username, frames) -> append(writers, username, frames));
+    }
+
+    /**
+     * Appends frames of one stream to its current segment, starting a new one if needed, and
+     * releases them.
+     */
+    private void append(Map<String, SegmentWriter> writers, String username, List<Frame> frames) {
+        try {
+            SegmentWriter writer = writers.get(username);
+            if (writer == null || writer.isFull()) {
+                if (writer != null) {
+                    writer.close();
+                }
+                writer = new SegmentWriter(streamDirectory(username), frames.get(0).timestampMillis());
+                writers.put(username, writer);
+            }
+            writer.append(frames);
+        } catch (IOException e) {
+            System.err.println("Recording failed for " + username + ": " + e.getMessage());
+            SegmentWriter broken = writers.remove(username);
+            if (broken != null) {
+                broken.close();
+            }
+        } finally {
+            frames.forEach(Frame::release);
+        }
+    }
+
+    /**
+     * Appends to one data/index segment pair. Used by the writer thread only.
+     */
+    private final class SegmentWriter {
+        private final FileChannel data;
+        private final FileChannel index;
+        private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_RECORD_BYTES * MAX_BATCH);
+        private long dataPosition;
+
+        SegmentWriter(Path streamDirectory, long startMillis) throws IOException {
+            Files.createDirectories(streamDirectory);
+            String name = String.format("%020d", startMillis);
+            data = FileChannel.open(streamDirectory.resolve(name + DATA_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            index = FileChannel.open(streamDirectory.resolve(name + INDEX_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            dataPosition = data.size();
+        }
+
+        boolean isFull() {
+            return dataPosition >= segmentBytes;
+        }
+
+        void append(List<Frame> frames) throws IOException {
+            ByteBuffer[] parts = new ByteBuffer[frames.size()];
+            indexBuffer.clear();
+            long offset = dataPosition;
+            for (int i = 0; i < parts.length; i++) {
+                Frame frame = frames.get(i);
+                parts[i] = ByteBuffer.wrap(frame.array(), frame.partOffset(), frame.partLength());
+                indexBuffer.putLong(frame.timestampMillis())
+                        .putLong(frame.sequence())
+                        .putLong(offset)
+                        .putInt(frame.partLength());
+                offset += frame.partLength();
+            }
+
+            // Data before index, so a reader never sees an index record pointing past the data
+            long remaining = offset - dataPosition;
+            while (remaining > 0) {
+                remaining -= data.write(parts);
+            }
+            indexBuffer.flip();
+            while (indexBuffer.hasRemaining()) {
+                index.write(indexBuffer);
+            }
+            dataPosition = offset;
+        }
+
+        void close() {
+            try {
+                data.close();
+                index.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close recording segment: " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writerThread.interrupt();
+    }
+}
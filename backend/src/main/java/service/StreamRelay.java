@@ -0,0 +1,281 @@
+package service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Edge relay mode ({@code stream.relay.origins}).
+ *
+ * When a viewer asks this node for a stream it does not hold, the relay opens one MJPEG
+ * connection to the first origin that has the stream and republishes its frames into the
+ * local {@link StreamManager}. Local viewers then subscribe as usual, so the origin sends each
+ * frame once per edge instead of once per viewer.
+ *
+ * Relay requests carry {@link #RELAY_HEADER}; a node never relays a request that has it, so
+ * nodes can list each other as origins without forwarding loops. A relayed stream ends when
+ * the origin closes the feed, when a local streamer registers the same name, once it has had
+ * no local viewers for {@code stream.relay.idle-timeout-ms}, or when no frame has arrived
+ * for {@code stream.relay.read-timeout-ms}. The last two are checked by a watchdog rather than
+ * between frames, so a stalled or half-open origin connection cannot keep a frozen stream alive.
+ */
+@Component
+public class StreamRelay {
+
+    public static final String RELAY_HEADER = "X-Stream-Relay";
+
+    private static final String CONTENT_LENGTH = "content-length:";
+    private static final long WATCHDOG_INTERVAL_MS = 1000;
+
+    private final StreamManager streamManager;
+    private final ViewerRegistry viewerRegistry;
+    private final StreamMetrics streamMetrics;
+    private final List<String> origins;
+    private final Duration connectTimeout;
+    private final long idleTimeoutNanos;
+    private final long readTimeoutNanos;
+    private final HttpClient client;
+    private final Map<String, Relay> relays = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stream-relay-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StreamRelay(StreamManager streamManager, ViewerRegistry viewerRegistry, StreamMetrics streamMetrics,
+                       @Value("${stream.relay.origins:}") String origins,
+                       @Value("${stream.relay.connect-timeout-ms:2000}") long connectTimeoutMs,
+                       @Value("${stream.relay.idle-timeout-ms:10000}") long idleTimeoutMs,
+                       @Value("${stream.relay.read-timeout-ms:15000}") long readTimeoutMs) {
+        this.streamManager = streamManager;
+        this.viewerRegistry = viewerRegistry;
+        this.streamMetrics = streamMetrics;
+        this.origins = Arrays.stream(origins.split(","))
+                .map(String::trim)
+                .filter(origin -> !origin.isEmpty())
+                .map(origin -> origin.endsWith("/") ? origin.substring(0, origin.length() - 1) : origin)
+                .toList();
+        this.connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        this.idleTimeoutNanos = Duration.ofMillis(idleTimeoutMs).toNanos();
+        this.readTimeoutNanos = Duration.ofMillis(readTimeoutMs).toNanos();
+        this.client = HttpClient.newBuilder().connectTimeout(connectTimeout).build();
+    }
+
+    public boolean isEnabled() {
+        return !origins.isEmpty();
+    }
+
+    /**
+     * Makes a stream available locally, relaying it from an origin if this node does not hold it.
+     * Blocks while the origin connection is set up.
+     * @param username The ID of the stream.
+     * @return true if the stream is now active on this node.
+     */
+    public boolean ensureStream(String username) {
+        if (streamManager.isStreaming(username)) {
+            return true;
+        }
+        if (!isEnabled()) {
+            return false;
+        }
+
+        Relay relay = relays.computeIfAbsent(username, Relay::new);
+        if (!relay.connect()) {
+            relays.remove(username, relay);
+            return false;
+        }
+        return streamManager.isStreaming(username);
+    }
+
+    /**
+     * One relayed stream: the origin connection and the thread that republishes its frames.
+     */
+    private final class Relay implements Runnable {
+        private final String username;
+        private boolean connected;
+        private volatile boolean stopped;
+        private volatile String stopReason;
+        private volatile long lastFrameNanos;
+        private long lastViewerNanos;
+        private InputStream feed;
+        private StreamMetrics.StreamMeters meters;
+        private LiveStream stream;
+        private ScheduledFuture<?> watch;
+
+        Relay(String username) {
+            this.username = username;
+        }
+
+        synchronized boolean connect() {
+            if (connected) {
+                return !stopped;
+            }
+            String path = "/view/" + URLEncoder.encode(username, StandardCharsets.UTF_8).replace("+", "%20");
+            for (String origin : origins) {
+                try {
+                    HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(URI.create(origin + path))
+                                    .header(RELAY_HEADER, "1")
+                                    .timeout(connectTimeout)
+                                    .build(),
+                            HttpResponse.BodyHandlers.ofInputStream());
+                    if (response.statusCode() != 200) {
+                        response.body().close();
+                        continue;
+                    }
+                    feed = new BufferedInputStream(response.body(), 1 << 16);
+                    connected = true;
+                    meters = streamMetrics.registerStream(username);
+                    stream = streamManager.register(username);
+
+                    lastFrameNanos = lastViewerNanos = System.nanoTime();
+                    watch = watchdog.scheduleWithFixedDelay(this::check,
+                            WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+                    Thread thread = new Thread(this, "stream-relay-" + username);
+                    thread.setDaemon(true);
+                    thread.start();
+                    System.out.println("Relaying stream " + username + " from " + origin);
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Relay origin " + origin + " unavailable for " + username + ": " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            long frames = 0;
+            String reason = "origin closed the feed";
+            try {
+                while (!stopped && readFrame()) {
+                    frames++;
+                    lastFrameNanos = System.nanoTime();
+                }
+            } catch (IOException | RuntimeException e) {
+                reason = "feed failed - " + e.getMessage();
+            } finally {
+                // The watchdog stops a relay by closing its feed, which ends the read with an error
+                if (stopReason != null) {
+                    reason = stopReason;
+                }
+                watch.cancel(false);
+                stop();
+                relays.remove(username, this);
+                streamManager.removeStream(username, stream);
+                streamMetrics.removeStream(username, meters);
+                System.out.println("Relay of " + username + " stopped (" + reason + ") after " + frames + " frames");
+            }
+        }
+
+        /**
+         * Reads the next part's headers, then its JPEG straight into a pooled frame, and publishes it.
+         * @return false at the end of the feed, or once the relayed stream has been replaced.
+         */
+        private boolean readFrame() throws IOException {
+            int contentLength = -1;
+            String line;
+            while ((line = readLine(feed)) != null) {
+                if (line.regionMatches(true, 0, CONTENT_LENGTH, 0, CONTENT_LENGTH.length())) {
+                    contentLength = Integer.parseInt(line.substring(CONTENT_LENGTH.length()).trim());
+                } else if (line.isEmpty() && contentLength >= 0) {
+                    Frame frame = streamManager.allocateFrame(contentLength);
+                    try {
+                        if (feed.readNBytes(frame.array(), frame.dataOffset(), contentLength) < contentLength) {
+                            frame.release();
+                            return false;
+                        }
+                    } catch (IOException e) {
+                        frame.release();
+                        throw e;
+                    }
+                    frame.setLength(contentLength);
+                    meters.recordRelayed(contentLength);
+                    if (!streamManager.publishRelayed(stream, frame)) {
+                        stop("stream replaced");
+                        return false;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Runs on the watchdog: ends the relay once it has had no local viewers for the idle
+         * timeout, or once the origin has sent nothing for the read timeout.
+         */
+        private void check() {
+            long now = System.nanoTime();
+            if (viewerRegistry.countViewers(username) > 0) {
+                lastViewerNanos = now;
+            } else if (now - lastViewerNanos > idleTimeoutNanos) {
+                stop("no local viewers");
+            }
+            if (now - lastFrameNanos > readTimeoutNanos) {
+                stop("no data from origin for " + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + " ms");
+            }
+        }
+
+        private void stop(String reason) {
+            if (stopReason == null) {
+                stopReason = reason;
+            }
+            stop();
+        }
+
+        void stop() {
+            stopped = true;
+            try {
+                if (feed != null) {
+                    feed.close();
+                }
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        relays.values().forEach(Relay::stop);
+    }
+}
@@ -0,0 +1,371 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ChatBus} over plain TCP between a fixed set of nodes.
+ *
+ * Every node listens on {@code chat.bus.port} and keeps one outbound connection to each of the
+ * other nodes listed in {@code chat.bus.peers}. A published batch is encoded once and sent once
+ * per peer; peers deliver it to their own listener and never forward it, so the nodes must list
+ * each other (a full mesh). Batches received from peers are delivered on that connection's
+ * reader thread, in the order the peer published them.
+ *
+ * Each peer has its own writer thread and a queue bounded by {@code chat.bus.queue-bytes} that
+ * drops its oldest batches when full, so an unreachable or slow node never holds up chat on this
+ * one. While a peer is down its writer reconnects every {@code chat.bus.reconnect-ms}; batches
+ * still queued are sent once it is back, older ones are lost.
+ *
+ * Frames are a 4-byte length followed by the room ID, the message count and, per message, its
+ * ID and JSON. Connections start with {@link #MAGIC} and the sender's {@code chat.bus.node-id};
+ * a node refuses peers that share its ID, since their message IDs would collide. There is no
+ * authentication: the port must only be reachable by the other nodes.
+ */
+public class TcpChatBus implements ChatBus {
+
+    static final int MAGIC = 0x43484231; // "CHB1"
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private final int nodeId;
+    private final ServerSocket server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final int connectTimeoutMs;
+    private final long reconnectMs;
+    private final long queueBytesLimit;
+
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong receivedBatches = new AtomicLong();
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    private volatile Listener listener;
+    private volatile boolean closed;
+
+    /**
+     * Starts listening and connecting to the peers.
+     * @param nodeId This node's ID, distinct from every peer's, from 0 to {@link #MAX_NODES} - 1.
+     * @param port Port to accept peer connections on.
+     * @param peerAddresses {@code host:port} of every other node.
+     * @throws IllegalStateException If the port cannot be bound.
+     */
+    public TcpChatBus(int nodeId, int port, List<String> peerAddresses, int connectTimeoutMs, long reconnectMs, long queueBytesLimit) {
+        if (nodeId < 0 || nodeId >= MAX_NODES) {
+            throw new IllegalArgumentException("Chat bus node ID must be from 0 to " + (MAX_NODES - 1) + ", got: " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.reconnectMs = reconnectMs;
+        this.queueBytesLimit = queueBytesLimit;
+        try {
+            server = new ServerSocket(port);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot listen for chat bus peers on port " + port, e);
+        }
+        startThread(this::accept, "chat-bus-accept");
+
+        for (String address : peerAddresses) {
+            int separator = address.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Chat bus peer must be host:port, got: " + address);
+            }
+            Peer peer = new Peer(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+            peers.add(peer);
+            peer.writer = startThread(peer, "chat-bus-peer-" + address);
+        }
+        System.out.println("Chat bus node " + nodeId + " listening on port " + port + ", peers " + peerAddresses);
+    }
+
+    @Override
+    public int nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void publish(String roomId, long[] ids, List<String> messages) {
+        Listener current = listener;
+        if (current != null) {
+            current.onBatch(roomId, ids, messages);
+        }
+        if (peers.isEmpty()) {
+            return;
+        }
+        byte[] frame = encode(roomId, ids, messages);
+        for (Peer peer : peers) {
+            peer.offer(frame);
+        }
+        publishedBatches.incrementAndGet();
+    }
+
+    /**
+     * @return Batches from this node queued for the peers.
+     */
+    public long getPublishedBatches() {
+        return publishedBatches.get();
+    }
+
+    /**
+     * @return Batches received from peers.
+     */
+    public long getReceivedBatches() {
+        return receivedBatches.get();
+    }
+
+    /**
+     * @return Batches dropped from full peer queues or lost with a failed connection.
+     */
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    /**
+     * @return Peers an outbound connection is currently open to.
+     */
+    public int getConnectedPeers() {
+        return (int) peers.stream().filter(peer -> peer.connected).count();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                inbound.add(socket);
+                startThread(() -> read(socket), "chat-bus-in-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Chat bus accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the batches of one inbound peer connection until it closes.
+     */
+    private void read(Socket socket) {
+        try (socket; DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                System.err.println("Rejected chat bus connection from " + socket.getRemoteSocketAddress());
+                return;
+            }
+            if (in.readInt() == nodeId) {
+                System.err.println("Rejected chat bus peer " + socket.getRemoteSocketAddress()
+                        + ": it has this node's ID " + nodeId + ", chat.bus.node-id must differ per node");
+                return;
+            }
+            while (!closed) {
+                int length = in.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("invalid frame length " + length);
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                receivedBatches.incrementAndGet();
+                decode(ByteBuffer.wrap(frame));
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                System.out.println("Chat bus peer " + socket.getRemoteSocketAddress() + " disconnected: "
+                        + (e instanceof EOFException ? "connection closed" : e.getMessage()));
+            }
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    /**
+     * One other node: the outbound connection and the thread that writes its queued batches.
+     */
+    private final class Peer implements Runnable {
+        private final String host;
+        private final int port;
+        private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private volatile Socket socket;
+        private volatile boolean connected;
+        private Thread writer;
+
+        Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Queues a frame for this peer, dropping the oldest ones beyond the queue limit. Never blocks.
+         */
+        void offer(byte[] frame) {
+            queue.add(frame);
+            long queued = queuedBytes.addAndGet(frame.length);
+            while (queued > queueBytesLimit) {
+                byte[] oldest = queue.poll();
+                if (oldest == null) {
+                    break;
+                }
+                queued = queuedBytes.addAndGet(-oldest.length);
+                droppedBatches.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean reported = false;
+            while (!closed) {
+                try (Socket current = new Socket()) {
+                    socket = current;
+                    current.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+                    current.setTcpNoDelay(true);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(current.getOutputStream(), 1 << 16));
+                    out.writeInt(MAGIC);
+                    out.writeInt(nodeId);
+                    out.flush();
+                    connected = true;
+                    reported = false;
+                    System.out.println("Chat bus connected to peer " + host + ":" + port);
+                    writeQueued(out);
+                } catch (IOException e) {
+                    // Log the first failure of each outage, not every reconnect attempt
+                    if (!reported && !closed) {
+                        System.err.println("Chat bus peer " + host + ":" + port + " unavailable: " + e.getMessage());
+                        reported = true;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    connected = false;
+                    socket = null;
+                }
+                try {
+                    Thread.sleep(reconnectMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Writes frames as they are queued, flushing whenever the queue runs empty.
+         */
+        private void writeQueued(DataOutputStream out) throws IOException, InterruptedException {
+            while (!closed) {
+                byte[] frame = queue.take();
+                do {
+                    queuedBytes.addAndGet(-frame.length);
+                    try {
+                        out.write(frame);
+                    } catch (IOException e) {
+                        droppedBatches.incrementAndGet();
+                        throw e;
+                    }
+                } while ((frame = queue.poll()) != null);
+                out.flush();
+            }
+        }
+
+        void close() {
+            writer.interrupt();
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private void decode(ByteBuffer frame) {
+        String roomId = readString(frame);
+        int count = frame.getInt();
+        if (count <= 0 || count > frame.remaining() / Long.BYTES) {
+            throw new IllegalArgumentException("invalid message count " + count);
+        }
+        long[] ids = new long[count];
+        List<String> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids[i] = frame.getLong();
+            messages.add(readString(frame));
+        }
+        Listener current = listener;
+        if (current != null) {
+            current.onBatch(roomId, ids, messages);
+        }
+    }
+
+    static byte[] encode(String roomId, long[] ids, List<String> messages) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + messages.stream().mapToInt(String::length).sum());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0); // length, filled in below
+            writeString(out, roomId);
+            out.writeInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.writeLong(ids[i]);
+                writeString(out, messages.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory stream, cannot fail
+        }
+        byte[] frame = bytes.toByteArray();
+        ByteBuffer.wrap(frame).putInt(0, frame.length - Integer.BYTES);
+        return frame;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer frame) {
+        int length = frame.getInt();
+        if (length < 0 || length > frame.remaining()) {
+            throw new IllegalArgumentException("invalid string length " + length);
+        }
+        String value = new String(frame.array(), frame.position(), length, StandardCharsets.UTF_8);
+        frame.position(frame.position() + length);
+        return value;
+    }
+
+    private static Thread startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException ignored) {}
+        peers.forEach(Peer::close);
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
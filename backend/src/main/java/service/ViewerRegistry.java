@@ -0,0 +1,115 @@
+package service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks every connected {@link ViewerSession} and enforces the backpressure policy.
+ * A sweeper runs once per second and disconnects viewers that either stopped draining
+ * their connection for longer than {@code stream.viewer.stall-timeout-ms}, or skipped more
+ * than {@code stream.viewer.max-lag-frames} frames in a row without a single delivery.
+ */
+@Component
+public class ViewerRegistry {
+
+    private final StreamManager streamManager;
+    private final StreamMetrics streamMetrics;
+    private final ExecutorService deliveryExecutor;
+    private final int maxLagFrames;
+    private final long stallTimeoutNanos;
+
+    private final Set<ViewerSession> sessions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "viewer-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ViewerRegistry(StreamManager streamManager,
+                          StreamMetrics streamMetrics,
+                          @Qualifier("viewerDeliveryExecutor") ExecutorService deliveryExecutor,
+                          @Value("${stream.viewer.max-lag-frames:300}") int maxLagFrames,
+                          @Value("${stream.viewer.stall-timeout-ms:10000}") long stallTimeoutMs) {
+        this.streamManager = streamManager;
+        this.streamMetrics = streamMetrics;
+        this.deliveryExecutor = deliveryExecutor;
+        this.maxLagFrames = maxLagFrames;
+        this.stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(stallTimeoutMs);
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    StreamManager streamManager() {
+        return streamManager;
+    }
+
+    StreamMetrics streamMetrics() {
+        return streamMetrics;
+    }
+
+    ExecutorService deliveryExecutor() {
+        return deliveryExecutor;
+    }
+
+    void register(ViewerSession session) {
+        if (sessions.add(session)) {
+            session.meters.viewerJoined();
+        }
+    }
+
+    void unregister(ViewerSession session) {
+        if (sessions.remove(session)) {
+            session.meters.viewerLeft();
+        }
+    }
+
+    /**
+     * @return Number of viewers currently connected to a stream on this node.
+     */
+    public int countViewers(String username) {
+        int count = 0;
+        for (ViewerSession session : sessions) {
+            if (session.getUsername().equals(username)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of connected viewers per stream, counted in one pass over all sessions.
+     */
+    public Map<String, Integer> countViewersByStream() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (ViewerSession session : sessions) {
+            counts.merge(session.getUsername(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (ViewerSession session : sessions) {
+            try {
+                session.checkHealth(now, maxLagFrames, stallTimeoutNanos);
+            } catch (RuntimeException e) {
+                System.err.println("Viewer health check failed for " + session.getUsername() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,249 @@
+package service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-viewer delivery state, independent of the transport that carries the frames.
+ *
+ * Delivery is latest-frame-wins: at most one undelivered frame is held per viewer, and a
+ * newer frame replaces it, so a lagging viewer skips straight to the newest one and its
+ * memory cost stays at one frame. Writes run on the shared delivery executor, never on the
+ * ingest thread, and only while the transport reports it can accept data.
+ *
+ * The {@link ViewerRegistry} sweeps all sessions periodically and disconnects viewers that
+ * have skipped too many frames in a row or whose connection stopped draining.
+ */
+public abstract class ViewerSession implements FrameListener {
+
+    protected final ViewerRegistry registry;
+    protected final String username;
+    protected final Rendition rendition;
+    final StreamMetrics.StreamMeters meters;
+
+    private final AtomicReference<Frame> pending = new AtomicReference<>();
+    private final Queue<Frame> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final AtomicLong deliveredFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicInteger consecutiveDrops = new AtomicInteger();
+    private volatile long blockedSinceNanos;
+    private long lastSequence;
+    private boolean unflushed;
+
+    protected ViewerSession(ViewerRegistry registry, String username) {
+        this(registry, username, Rendition.FULL);
+    }
+
+    protected ViewerSession(ViewerRegistry registry, String username, Rendition rendition) {
+        this.registry = registry;
+        this.username = username;
+        this.rendition = rendition;
+        this.meters = registry.streamMetrics().forStream(username);
+    }
+
+    /**
+     * Writes one frame to the client. Called from the delivery executor, one call at a time.
+     * The frame reference is released by the caller after this returns.
+     */
+    protected abstract void send(Frame frame) throws IOException;
+
+    /**
+     * @return true if {@link #send(Frame)} may be called now without blocking or buffering unboundedly.
+     */
+    protected abstract boolean isWritable() throws IOException;
+
+    /**
+     * @return Bytes {@link #send(Frame)} puts on the wire for this frame, for the egress meters.
+     */
+    protected int wireLength(Frame frame) {
+        return frame.partLength();
+    }
+
+    /**
+     * Pushes out data the transport may still be buffering. Called once the session has nothing
+     * left to send and the transport is writable, so a frame's tail never waits for the next frame.
+     */
+    protected void flush() throws IOException {
+    }
+
+    /**
+     * Tears down the underlying connection. Called once, from {@link #close(String)}.
+     */
+    protected abstract void closeTransport();
+
+    /**
+     * Queues history frames (oldest first) to be sent before the live ones, e.g. for rewind.
+     * Must be called before {@link #start()}; ownership of the frame references passes to the session.
+     */
+    public void preload(List<Frame> frames) {
+        backlog.addAll(frames);
+    }
+
+    /**
+     * Registers the session and subscribes it to the stream.
+     * @return false if the stream is no longer active.
+     */
+    public boolean start() {
+        registry.register(this);
+        if (!registry.streamManager().subscribe(username, rendition, this)) {
+            close("stream not active");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        if (closed.get() || !frame.tryRetain()) {
+            return;
+        }
+        Frame superseded = pending.getAndSet(frame);
+        if (superseded != null) {
+            superseded.release();
+            droppedFrames.incrementAndGet();
+            consecutiveDrops.incrementAndGet();
+            meters.recordDroppedFrame();
+        }
+        if (closed.get()) {
+            releasePending();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    @Override
+    public void onStreamEnded() {
+        close("stream ended");
+    }
+
+    /**
+     * Asks for a drain pass, e.g. when the transport becomes writable again.
+     */
+    protected final void scheduleDrain() {
+        if (drainRequests.getAndIncrement() == 0) {
+            try {
+                registry.deliveryExecutor().execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; transports are closed by their containers
+                drainRequests.set(0);
+            }
+        }
+    }
+
+    /**
+     * Writes pending frames while the transport accepts data. Only one drain runs at a time per
+     * viewer; requests that arrive during a drain make it loop once more instead of starting a second one.
+     */
+    private void drain() {
+        int missed = 1;
+        do {
+            try {
+                while (!closed.get() && (!backlog.isEmpty() || pending.get() != null)) {
+                    if (!isWritable()) {
+                        if (blockedSinceNanos == 0) {
+                            blockedSinceNanos = System.nanoTime();
+                        }
+                        break;
+                    }
+                    blockedSinceNanos = 0;
+
+                    // History goes out first; the live frame waits in its slot and is only ever newer
+                    Frame frame = backlog.poll();
+                    if (frame == null) {
+                        frame = pending.getAndSet(null);
+                    }
+                    if (frame == null) {
+                        break;
+                    }
+                    try {
+                        if (frame.sequence() > lastSequence) {
+                            long sendStarted = System.nanoTime();
+                            send(frame);
+                            unflushed = true;
+                            meters.recordDelivery(wireLength(frame), System.nanoTime() - sendStarted);
+                            lastSequence = frame.sequence();
+                            deliveredFrames.incrementAndGet();
+                            consecutiveDrops.set(0);
+                        }
+                    } finally {
+                        frame.release();
+                    }
+                }
+                if (unflushed && !closed.get() && backlog.isEmpty() && pending.get() == null && isWritable()) {
+                    unflushed = false;
+                    flush();
+                }
+            } catch (IOException | IllegalStateException e) {
+                close("write failed - " + e.getMessage());
+            }
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Evicts the viewer if it is lagging or stalled beyond the registry's thresholds.
+     * @param nowNanos Current {@link System#nanoTime()}.
+     * @param maxLagFrames Consecutive skipped frames tolerated without a successful delivery.
+     * @param stallTimeoutNanos How long the connection may refuse writes.
+     */
+    void checkHealth(long nowNanos, int maxLagFrames, long stallTimeoutNanos) {
+        long blockedSince = blockedSinceNanos;
+        if (blockedSince != 0 && nowNanos - blockedSince > stallTimeoutNanos) {
+            close("stalled for " + (nowNanos - blockedSince) / 1_000_000 + " ms");
+        } else if (consecutiveDrops.get() > maxLagFrames) {
+            close("lagging by " + consecutiveDrops.get() + " frames");
+        }
+    }
+
+    /**
+     * Unsubscribes, frees the pending frame and closes the transport. Idempotent.
+     * @param reason Logged with the disconnect.
+     */
+    public final void close(String reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        registry.streamManager().unsubscribe(username, rendition, this);
+        registry.unregister(this);
+        releasePending();
+        System.out.println("Viewer of " + username + " disconnected (" + reason + ") after "
+                + deliveredFrames.get() + " frames, " + droppedFrames.get() + " skipped");
+        closeTransport();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getDeliveredFrames() {
+        return deliveredFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private void releasePending() {
+        Frame leftover = pending.getAndSet(null);
+        if (leftover != null) {
+            leftover.release();
+        }
+        while ((leftover = backlog.poll()) != null) {
+            leftover.release();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package service;
+
+/**
+ * Encodes the header of the binary messages sent to {@code /watch} viewers.
+ *
+ * Like {@link MjpegPart}, the header is written once per frame into the {@link Frame#HEADROOM},
+ * in front of the MJPEG part headers, so every viewer sends the same bytes,
+ * {@link Frame#watchOffset()} .. end of the JPEG, without a per-viewer copy.
+ * <pre>
+ *  offset  size  field
+ *  0       1     version         (currently 2)
+ *  1       1     rendition       (0 = full, 1 = 480p, 2 = 240p)
+ *  2       2     header length   (bytes before the JPEG; clients skip this many)
+ *  4       8     sequence number (per stream, increasing)
+ *  12      8     timestamp       (ms since the epoch at which the frame was published)
+ *  20      4     reserved        (0; version 1 carried the viewer's skipped frames here)
+ *  24      4     payload length  (bytes of JPEG that follow the header)
+ * </pre>
+ * The fields take {@link #FIELDS_LENGTH} bytes; the header length also covers the MJPEG part
+ * headers between them and the JPEG, which clients ignore.
+ */
+public final class WatchHeader {
+
+    public static final byte VERSION = 2;
+    public static final int FIELDS_LENGTH = 28;
+
+    private WatchHeader() {
+    }
+
+    /**
+     * Writes the header in front of the frame's MJPEG part headers, without allocating.
+     * @param frame A frame whose sequence, timestamp and MJPEG part headers are final.
+     * @param rendition The rendition the frame's JPEG was encoded for.
+     */
+    static void encode(Frame frame, Rendition rendition) {
+        byte[] buffer = frame.array();
+        int position = frame.partOffset() - FIELDS_LENGTH;
+        int headerLength = frame.dataOffset() - position;
+
+        buffer[position] = VERSION;
+        buffer[position + 1] = (byte) rendition.ordinal();
+        putShort(buffer, position + 2, headerLength);
+        putLong(buffer, position + 4, frame.sequence());
+        putLong(buffer, position + 12, frame.timestampMillis());
+        putInt(buffer, position + 20, 0);
+        putInt(buffer, position + 24, frame.length());
+
+        frame.setWatchOffset(position);
+    }
+
+    private static void putShort(byte[] buffer, int index, int value) {
+        buffer[index] = (byte) (value >>> 8);
+        buffer[index + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] buffer, int index, int value) {
+        putShort(buffer, index, value >>> 16);
+        putShort(buffer, index + 2, value);
+    }
+
+    private static void putLong(byte[] buffer, int index, long value) {
+        putInt(buffer, index, (int) (value >>> 32));
+        putInt(buffer, index + 4, (int) value);
+    }
+}
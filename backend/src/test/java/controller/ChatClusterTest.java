@@ -0,0 +1,231 @@
+package controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.project.app.Main;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import service.ChatBus;
+import service.LocalChatBus;
+import service.TcpChatBus;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs whole backends in this JVM and checks chat delivery through real WebSocket clients:
+ * two nodes linked by {@link TcpChatBus}, and one on its own with {@link LocalChatBus}.
+ */
+class ChatClusterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    /** How long a client keeps listening after the expected messages, to catch duplicates. */
+    private static final long SETTLE_MS = 500;
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private final List<ChatClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        clients.forEach(ChatClient::close);
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void messageSentOnOneNodeReachesTheOtherNodeOnce() throws Exception {
+        List<ConfigurableApplicationContext> cluster = startLinkedNodes();
+        ConfigurableApplicationContext a = cluster.get(0);
+        ConfigurableApplicationContext b = cluster.get(1);
+
+        ChatClient sender = connect(a, "room", "alice");
+        ChatClient receiver = connect(b, "room", "bob");
+        awaitMembers(a, "room", 1);
+        awaitMembers(b, "room", 1);
+
+        sender.send("hello from a");
+        receiver.send("hello from b");
+
+        for (ChatClient client : List.of(sender, receiver)) {
+            await(() -> client.messages.size() >= 2);
+            Thread.sleep(SETTLE_MS);
+            assertEquals(List.of("hello from a", "hello from b"), texts(client));
+        }
+
+        // Both nodes assign IDs, which must not collide and must end in the sending node's ID
+        Set<Long> ids = new HashSet<>();
+        for (JsonNode message : receiver.messages) {
+            long id = message.path("id").asLong();
+            ids.add(id);
+            assertEquals(message.path("text").asText().endsWith(" a") ? 1 : 2, id % ChatBus.MAX_NODES);
+        }
+        assertEquals(2, ids.size());
+    }
+
+    @Test
+    void reconnectingClientCatchesUpOnMessagesFromBothNodes() throws Exception {
+        List<ConfigurableApplicationContext> cluster = startLinkedNodes();
+        ConfigurableApplicationContext a = cluster.get(0);
+        ConfigurableApplicationContext b = cluster.get(1);
+
+        ChatClient first = connect(b, "room", "bob");
+        ChatClient sender = connect(a, "room", "alice");
+        awaitMembers(a, "room", 1);
+        awaitMembers(b, "room", 1);
+        first.send("before");
+        await(() -> first.messages.size() == 1);
+        long sinceId = first.messages.get(0).path("id").asLong();
+
+        sender.send("after from a");
+        first.send("after from b");
+        await(() -> first.messages.size() == 3);
+
+        ChatClient rejoined = connect(b, "room", "bob", sinceId);
+        await(() -> rejoined.messages.size() >= 2);
+        Thread.sleep(SETTLE_MS);
+        assertEquals(List.of("after from a", "after from b"), texts(rejoined));
+    }
+    @Test
+    void localBusDeliversToEveryMemberOnce() throws Exception {
+        ConfigurableApplicationContext node = startNode();
+        assertInstanceOf(LocalChatBus.class, node.getBean(ChatBus.class));
+
+        ChatClient sender = connect(node, "room", "alice");
+        ChatClient receiver = connect(node, "room", "bob");
+        ChatClient elsewhere = connect(node, "other", "carol");
+        awaitMembers(node, "room", 2);
+        awaitMembers(node, "other", 1);
+
+        sender.send("hello");
+
+        await(() -> receiver.messages.size() >= 1 && sender.messages.size() >= 1);
+        Thread.sleep(SETTLE_MS);
+        assertEquals(List.of("hello"), texts(receiver));
+        assertEquals(List.of("hello"), texts(sender));
+        assertTrue(elsewhere.messages.isEmpty());
+    }
+
+    /**
+     * Starts two nodes linked by the TCP chat bus and waits until each is connected to the other.
+     */
+    private List<ConfigurableApplicationContext> startLinkedNodes() throws Exception {
+        int busA = freePort();
+        int busB = freePort();
+        ConfigurableApplicationContext a = startNode("--chat.bus.node-id=1", "--chat.bus.port=" + busA,
+                "--chat.bus.peers=localhost:" + busB);
+        ConfigurableApplicationContext b = startNode("--chat.bus.node-id=2", "--chat.bus.port=" + busB,
+                "--chat.bus.peers=localhost:" + busA);
+        TcpChatBus busOfA = assertInstanceOf(TcpChatBus.class, a.getBean(ChatBus.class));
+        TcpChatBus busOfB = assertInstanceOf(TcpChatBus.class, b.getBean(ChatBus.class));
+        await(() -> busOfA.getConnectedPeers() == 1 && busOfB.getConnectedPeers() == 1);
+        return List.of(a, b);
+    }
+
+    private ConfigurableApplicationContext startNode(String... args) {
+        List<String> all = new ArrayList<>(List.of("--server.port=0", "--logging.level.root=WARN"));
+        all.addAll(List.of(args));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Main.class).run(all.toArray(String[]::new));
+        nodes.add(context);
+        return context;
+    }
+
+    private ChatClient connect(ConfigurableApplicationContext node, String roomId, String username) throws Exception {
+        return connect(node, roomId, username, -1);
+    }
+
+    private ChatClient connect(ConfigurableApplicationContext node, String roomId, String username, long sinceId)
+            throws Exception {
+        int port = ((WebServerApplicationContext) node).getWebServer().getPort();
+        ChatClient client = new ChatClient();
+        client.webSocket = http.newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:" + port + "/chat?roomId=" + roomId + "&username=" + username
+                        + (sinceId >= 0 ? "&sinceId=" + sinceId : "")), client)
+                .get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Waits until the node has registered its members of the room; the client's handshake can
+     * complete before the server has added it, and a message sent in between would miss it.
+     */
+    private static void awaitMembers(ConfigurableApplicationContext node, String roomId, int members)
+            throws InterruptedException {
+        ChatWebSocketHandler handler = node.getBean(ChatWebSocketHandler.class);
+        await(() -> handler.countMembers(roomId) == members);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+
+    private static List<String> texts(ChatClient client) {
+        return client.messages.stream().map(message -> message.path("text").asText()).sorted().toList();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Collects every chat message it receives, unpacking batches.
+     */
+    private final class ChatClient implements WebSocket.Listener {
+        final List<JsonNode> messages = new CopyOnWriteArrayList<>();
+        private final StringBuilder partial = new StringBuilder();
+        private WebSocket webSocket;
+
+        void send(String text) throws Exception {
+            webSocket.sendText(json.createObjectNode().put("text", text).toString(), true)
+                    .get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                try {
+                    JsonNode payload = json.readTree(partial.toString());
+                    for (JsonNode message : payload.isArray() ? payload : json.createArrayNode().add(payload)) {
+                        messages.add(message);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                partial.setLength(0);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        void close() {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "test finished");
+        }
+    }
+}
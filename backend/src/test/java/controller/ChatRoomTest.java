@@ -0,0 +1,73 @@
+package controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * History of one room when batches from other nodes arrive out of ID order.
+ */
+class ChatRoomTest {
+
+    private final ChatMeters meters = new ChatMeters(new SimpleMeterRegistry());
+
+    @Test
+    void lateBatchFromAnotherNodeIsReplayedAfterSinceId() throws Exception {
+        ChatRoom room = new ChatRoom("room", 10);
+        publish(room, 100, 300);
+        publish(room, 200); // sent before 300 on another node, arrived after it
+
+        assertEquals("[\"200\",\"300\"]", catchUp(room, 100));
+        assertEquals("[\"300\"]", catchUp(room, 250));
+        assertEquals("[\"100\",\"200\",\"300\"]", catchUp(room, -1));
+    }
+
+    @Test
+    void fullHistoryKeepsTheNewestIds() throws Exception {
+        ChatRoom room = new ChatRoom("room", 2);
+        publish(room, 200, 300);
+        publish(room, 100); // older than everything kept
+        assertEquals("[\"200\",\"300\"]", catchUp(room, -1));
+
+        publish(room, 250);
+        assertEquals("[\"250\",\"300\"]", catchUp(room, -1));
+        assertEquals(250, room.oldestId());
+    }
+
+    @Test
+    void upToDateMemberGetsNoCatchUp() throws Exception {
+        ChatRoom room = new ChatRoom("room", 10);
+        publish(room, 100);
+
+        WebSocketSession session = mock(WebSocketSession.class);
+        room.join(new ChatMember(session, Runnable::run, meters, 5000, 65536), 100, 50);
+        verify(session, never()).sendMessage(any());
+    }
+
+    private static void publish(ChatRoom room, long... ids) {
+        List<String> batch = Arrays.stream(ids).mapToObj(id -> "\"" + id + "\"").toList();
+        room.publish(ids, batch, new TextMessage(String.join(",", batch)));
+    }
+
+    /**
+     * Joins a member and returns the catch-up batch it was sent.
+     */
+    private String catchUp(ChatRoom room, long sinceId) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        room.join(new ChatMember(session, Runnable::run, meters, 5000, 65536), sinceId, 50);
+        ArgumentCaptor<TextMessage> sent = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session).sendMessage(sent.capture());
+        return sent.getValue().getPayload();
+    }
+}
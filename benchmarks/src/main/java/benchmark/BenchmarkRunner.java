@@ -0,0 +1,42 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks at each contention level, with the GC profiler attached so the results
+ * include allocation per operation ({@code gc.alloc.rate.norm}) next to throughput and latency
+ * percentiles. Results are also written to {@code jmh-result-<threads>.json}.
+ *
+ * Usage: {@code java -jar target/benchmarks.jar [include-regex] [thread-counts]},
+ * e.g. {@code java -jar target/benchmarks.jar Decrypt 1,16}.
+ * For a single run with arbitrary JMH options use {@code java -cp target/benchmarks.jar org.openjdk.jmh.Main}.
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,16,64";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "benchmark\\..*";
+        String threadCounts = args.length > 1 ? args[1] : DEFAULT_THREADS;
+
+        for (String value : threadCounts.split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
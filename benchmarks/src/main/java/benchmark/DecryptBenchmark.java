@@ -0,0 +1,107 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import security.AESUtil;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame decryption as done on the ingest thread, for both wire formats of {@code /stream}
+ * and both cipher modes of the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecryptBenchmark {
+
+    @Param({"10240", "102400", "1048576"})
+    public int frameSize;
+
+    @Param({"128", "256"})
+    public int keyBits;
+
+    private final AESUtil aesUtil = new AESUtil();
+    private SecretKeySpec key;
+    private String textMessage;
+    private byte[] binaryCiphertext;
+    private byte[] chunkedCiphertext;
+    private final byte[] nonce = new byte[12];
+
+    /** Plaintext bytes per chunk of the chunked GCM benchmark. */
+    private static final int CHUNK_SIZE = 65536;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        byte[] keyBytes = new byte[keyBits / 8];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+
+        byte[] jpeg = new byte[frameSize];
+        random.nextBytes(jpeg);
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        binaryCiphertext = cipher.doFinal(jpeg);
+        textMessage = "AES_ENC_PREFIX::00000000::" + Base64.getEncoder().encodeToString(binaryCiphertext);
+
+        random.nextBytes(nonce);
+        int chunks = (frameSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        ByteBuffer sealed = ByteBuffer.allocate(frameSize + chunks * 16);
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        for (int i = 0; i < chunks; i++) {
+            byte[] iv = nonce.clone();
+            ByteBuffer.wrap(iv).putInt(8, ByteBuffer.wrap(nonce).getInt(8) ^ i);
+            gcm.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+            gcm.updateAAD(ByteBuffer.allocate(13).putLong(0).putInt(i).put((byte) (i == chunks - 1 ? 1 : 0)).array());
+            int start = i * CHUNK_SIZE;
+            gcm.doFinal(ByteBuffer.wrap(jpeg, start, Math.min(CHUNK_SIZE, frameSize - start)), sealed);
+        }
+        chunkedCiphertext = sealed.array();
+    }
+
+    /** Per-thread destination, like the pooled frame the handler decrypts into. */
+    @State(Scope.Thread)
+    public static class Output {
+        byte[] buffer;
+
+        @Setup
+        public void setUp(DecryptBenchmark benchmark) {
+            buffer = new byte[benchmark.binaryCiphertext.length];
+        }
+    }
+
+    /** {@code ?format=text}: Base64 decode plus decrypt into a new array. */
+    @Benchmark
+    public byte[] textMessage() throws Exception {
+        return aesUtil.decrypt(textMessage, key);
+    }
+
+    /** {@code ?format=binary}: decrypt straight from the message buffer into a reused array. */
+    @Benchmark
+    public int binaryMessage(Output output) throws Exception {
+        return aesUtil.decryptInto(ByteBuffer.wrap(binaryCiphertext), key, output.buffer, 0);
+    }
+
+    /** Binary format in chunked GCM mode; frames above the parallel threshold use the decrypt pool. */
+    @Benchmark
+    public int binaryChunkedGcm(Output output) throws Exception {
+        return aesUtil.decryptChunkedInto(ByteBuffer.wrap(chunkedCiphertext), key, 0, nonce, CHUNK_SIZE,
+                output.buffer, 0);
+    }
+
+    /** Binary format with an allocated result, for comparison with {@link #binaryMessage}. */
+    @Benchmark
+    public void binaryMessageAllocating(Blackhole blackhole) throws Exception {
+        blackhole.consume(aesUtil.decrypt(ByteBuffer.wrap(binaryCiphertext), key));
+    }
+}
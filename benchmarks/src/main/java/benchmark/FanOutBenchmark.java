@@ -0,0 +1,101 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import service.Frame;
+import service.FrameBufferPool;
+import service.FrameListener;
+import service.FrameRingAllocator;
+import service.RenditionTranscoder;
+import service.StreamManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishing one frame to N viewers, including the MJPEG write each viewer performs.
+ * The listeners write synchronously into a discarding stream, so this measures the CPU and
+ * allocation cost of the publish and write loop without network or scheduling effects.
+ * Each benchmark thread publishes its own stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanOutBenchmark {
+
+    private static final AtomicInteger STREAM_IDS = new AtomicInteger();
+
+    @Param({"10240", "102400", "1048576"})
+    public int frameSize;
+
+    @Param({"1", "16", "64"})
+    public int viewers;
+
+    private StreamManager streamManager;
+    private String username;
+    private byte[] jpeg;
+    private byte counter;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        FrameBufferPool pool = new FrameBufferPool(64L << 20);
+        streamManager = new StreamManager(pool, new FrameRingAllocator(0, 0, 0),
+                new RenditionTranscoder(pool, Executors.newSingleThreadExecutor()), true, 5000, false, Runnable::run);
+        username = "bench-fanout-" + STREAM_IDS.incrementAndGet();
+        streamManager.registerStream(username);
+        jpeg = new byte[frameSize];
+        new Random(42).nextBytes(jpeg);
+
+        OutputStream sink = new DiscardingOutputStream(blackhole);
+        for (int i = 0; i < viewers; i++) {
+            streamManager.subscribe(username, frame -> {
+                try {
+                    sink.write(frame.array(), frame.partOffset(), frame.partLength());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        streamManager.removeStream(username);
+    }
+
+    @Benchmark
+    public void publishToViewers() {
+        Frame frame = streamManager.allocateFrame(jpeg.length);
+        System.arraycopy(jpeg, 0, frame.array(), frame.dataOffset(), jpeg.length);
+        frame.array()[frame.dataOffset() + 2] = counter++; // differs from the previous frame, so it is not deduplicated
+        frame.setLength(jpeg.length);
+        streamManager.updateFrame(username, frame);
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        DiscardingOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b[off]);
+            blackhole.consume(len);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import service.Frame;
+import service.FrameBufferPool;
+import service.FrameRingAllocator;
+import service.RenditionTranscoder;
+import service.StreamManager;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frame publication through {@link StreamManager}: every benchmark thread is the ingest
+ * thread of its own stream, so running with more threads measures contention on the shared
+ * buffer pool and history budget, as with many concurrent streamers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublishBenchmark {
+
+    @Param({"10240", "102400", "1048576"})
+    public int frameSize;
+
+    /** Whether streams keep their off-heap history ({@code stream.ring.*}). */
+    @Param({"true", "false"})
+    public boolean history;
+
+    StreamManager streamManager;
+    byte[] jpeg;
+    private final AtomicInteger streamIds = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        FrameBufferPool pool = new FrameBufferPool(64L << 20);
+        streamManager = new StreamManager(pool, new FrameRingAllocator(history ? 8 << 20 : 0, 256L << 20, 300),
+                new RenditionTranscoder(pool, Executors.newSingleThreadExecutor()), true, 5000, false, Runnable::run);
+        jpeg = new byte[frameSize];
+        new Random(42).nextBytes(jpeg);
+    }
+
+    @State(Scope.Thread)
+    public static class Stream {
+        String username;
+        byte counter;
+
+        @Setup
+        public void setUp(PublishBenchmark benchmark) {
+            username = "bench-" + benchmark.streamIds.incrementAndGet();
+            benchmark.streamManager.registerStream(username);
+        }
+
+        @TearDown
+        public void tearDown(PublishBenchmark benchmark) {
+            benchmark.streamManager.removeStream(username);
+        }
+    }
+
+    /** Borrow a pooled frame, fill it as the decrypt would, and publish it. */
+    @Benchmark
+    public void publish(Stream stream) {
+        Frame frame = streamManager.allocateFrame(jpeg.length);
+        System.arraycopy(jpeg, 0, frame.array(), frame.dataOffset(), jpeg.length);
+        frame.array()[frame.dataOffset() + 2] = stream.counter++; // differs from the previous frame, so it is not deduplicated
+        frame.setLength(jpeg.length);
+        streamManager.updateFrame(stream.username, frame);
+    }
+
+    /**
+     * One stream fed by a background publisher at full speed, read by all benchmark threads
+     * the way viewers take the latest frame.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedStream {
+        static final String USERNAME = "bench-shared";
+
+        private volatile boolean running;
+        private Thread publisher;
+
+        @Setup
+        public void setUp(PublishBenchmark benchmark) {
+            StreamManager streamManager = benchmark.streamManager;
+            streamManager.registerStream(USERNAME);
+            running = true;
+            publisher = new Thread(() -> {
+                byte counter = 0;
+                while (running) {
+                    Frame frame = streamManager.allocateFrame(benchmark.jpeg.length);
+                    System.arraycopy(benchmark.jpeg, 0, frame.array(), frame.dataOffset(), benchmark.jpeg.length);
+                    frame.array()[frame.dataOffset() + 2] = counter++;
+                    frame.setLength(benchmark.jpeg.length);
+                    streamManager.updateFrame(USERNAME, frame);
+                }
+            }, "bench-publisher");
+            publisher.setDaemon(true);
+            publisher.start();
+        }
+
+        @TearDown
+        public void tearDown(PublishBenchmark benchmark) throws InterruptedException {
+            running = false;
+            publisher.join();
+            benchmark.streamManager.removeStream(USERNAME);
+        }
+    }
+
+    /** Take and release a reference to the latest frame while it is being replaced concurrently. */
+    @Benchmark
+    public void readLatest(SharedStream stream, Blackhole blackhole) {
+        Frame frame = streamManager.acquireLatestFrame(SharedStream.USERNAME);
+        if (frame != null) {
+            blackhole.consume(frame.array()[frame.partOffset()]);
+            frame.release();
+        }
+    }
+}
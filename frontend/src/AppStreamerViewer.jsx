@@ -2,7 +2,8 @@
 import React, { useState } from 'react';
 import VideoStreamer from './VideoStreamer'; 
 import ChatContainer from './ChatContainer';
-import { HTTP_BASE_URL } from './config';
+import WatchPlayer from './WatchPlayer';
+import { HTTP_BASE_URL, VIEWER_TRANSPORT } from './config';
 import "./AppLayout.css";
 
 const AppStreamerViewer = () => {
@@ -80,18 +81,25 @@ const AppStreamerViewer = () => {
                     <p style={{ fontSize: '0.9em', color: '#666' }}>
                         Stream URL: {`${HTTP_BASE_URL}/view/${targetStreamer}`}
                     </p>
-                    {/* The browser handles the MJPEG stream from the server */}
-                    <img 
-                        src={`${HTTP_BASE_URL}/view/${targetStreamer}`} 
-                        alt={`Live Stream from ${targetStreamer}`}
-                        style={{ width: '640px', height: '480px', border: '2px solid #007bff', backgroundColor: '#000' }}
-                        onError={(e) => { 
-                            console.error('Stream load failed for:', targetStreamer);
-                            e.target.onerror = null; 
-                            e.target.style.backgroundColor = '#333';
-                            e.target.alt = 'Stream Offline - Check if streamer is broadcasting';
-                        }}
-                    />
+                    {VIEWER_TRANSPORT === 'websocket' ? (
+                        <WatchPlayer
+                            streamer={targetStreamer}
+                            style={{ width: '640px', height: '480px', border: '2px solid #007bff', backgroundColor: '#000' }}
+                        />
+                    ) : (
+                        /* The browser handles the MJPEG stream from the server */
+                        <img 
+                            src={`${HTTP_BASE_URL}/view/${targetStreamer}`} 
+                            alt={`Live Stream from ${targetStreamer}`}
+                            style={{ width: '640px', height: '480px', border: '2px solid #007bff', backgroundColor: '#000' }}
+                            onError={(e) => { 
+                                console.error('Stream load failed for:', targetStreamer);
+                                e.target.onerror = null; 
+                                e.target.style.backgroundColor = '#333';
+                                e.target.alt = 'Stream Offline - Check if streamer is broadcasting';
+                            }}
+                        />
+                    )}
                 </div>
             )}
         </div>
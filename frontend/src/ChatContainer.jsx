@@ -36,8 +36,9 @@ const ChatContainer = ({ roomId, username }) => {
 
     ws.onmessage = (event) => {
       try {
+        // The server batches messages that arrive close together into an array
         const msg = JSON.parse(event.data);
-        setMessages((prev) => [...prev, msg]);
+        setMessages((prev) => (Array.isArray(msg) ? [...prev, ...msg] : [...prev, msg]));
       } catch (e) {
         console.error("Failed to parse chat message:", e);
       }
@@ -1,15 +1,17 @@
 import CryptoJS from "crypto-js";
 import { ENCRYPTION_PREFIX } from './config';
 
-const KEY_CHUNK_PLACEHOLDER = "00000000::"; 
+// The key chunk names the session key the frame was encrypted with (8 hex digits)
+const keyChunk = (keyId) => (keyId >>> 0).toString(16).padStart(8, "0") + "::";
 
 /**
  * Encrypts raw binary data (ArrayBuffer) of a JPEG frame using AES.
  * @param {ArrayBuffer} frameData The raw ArrayBuffer of the JPEG frame.
  * @param {string} aesKeyString The raw byte string of the dynamic AES key.
+ * @param {number} keyId The id the key was registered under.
  * @returns {string} The fully prefixed and encrypted Base64 string.
  */
-export const encryptFrame = (frameData, aesKeyString) => {
+export const encryptFrame = (frameData, aesKeyString, keyId = 0) => {
     // 1. Convert ArrayBuffer to a Uint8Array
     const frameDataArray = new Uint8Array(frameData); 
 
@@ -31,8 +33,121 @@ export const encryptFrame = (frameData, aesKeyString) => {
     // 5. Extract the Base64 ciphertext string
     const base64Ciphertext = encrypted.ciphertext.toString(CryptoJS.enc.Base64);
 
-    // 6. Assemble the final message string with the required prefix and placeholder
-    const finalMessage = ENCRYPTION_PREFIX + KEY_CHUNK_PLACEHOLDER + base64Ciphertext;
+    // 6. Assemble the final message string with the required prefix and key chunk
+    const finalMessage = ENCRYPTION_PREFIX + keyChunk(keyId) + base64Ciphertext;
     
     return finalMessage;
-};
\ No newline at end of file
+};
+
+// Binary ingest header, mirrors backend security/BinaryFrameHeader.java
+const BINARY_HEADER_LENGTH = 32;
+const BINARY_VERSION = 1;
+const BINARY_MODE_ECB = 0;
+
+/**
+ * Encrypts a JPEG frame for the binary ingest protocol (`/stream?format=binary`).
+ * Produces a 32-byte header followed by the raw ciphertext, avoiding the Base64 expansion.
+ * @param {ArrayBuffer} frameData The raw ArrayBuffer of the JPEG frame.
+ * @param {string} aesKeyString The raw byte string of the dynamic AES key.
+ * @param {number} sequence Monotonic frame counter for this stream.
+ * @param {number} keyId The id the key was registered under.
+ * @returns {ArrayBuffer} Header + ciphertext, ready for WebSocket.send.
+ */
+export const encryptFrameBinary = (frameData, aesKeyString, sequence, keyId = 0) => {
+    const wordArray = CryptoJS.lib.WordArray.create(new Uint8Array(frameData));
+    const key = CryptoJS.enc.Latin1.parse(aesKeyString);
+
+    const encrypted = CryptoJS.AES.encrypt(wordArray, key, {
+        mode: CryptoJS.mode.ECB,
+        padding: CryptoJS.pad.Pkcs7,
+    });
+
+    const { words, sigBytes } = encrypted.ciphertext;
+    const buffer = new ArrayBuffer(BINARY_HEADER_LENGTH + sigBytes);
+    const view = new DataView(buffer);
+
+    view.setUint8(0, BINARY_VERSION);
+    view.setUint8(1, BINARY_MODE_ECB);
+    view.setBigInt64(4, BigInt(sequence));
+    // Bytes 12..23 hold the IV, which ECB does not use
+    view.setUint32(24, keyId);
+    view.setUint32(28, sigBytes);
+
+    const payload = new Uint8Array(buffer, BINARY_HEADER_LENGTH);
+    for (let i = 0; i < sigBytes; i++) {
+        payload[i] = (words[i >>> 2] >>> (24 - (i % 4) * 8)) & 0xff;
+    }
+
+    return buffer;
+};
+
+const BINARY_MODE_GCM_CHUNKED = 1;
+const GCM_NONCE_LENGTH = 12;
+const GCM_TAG_LENGTH = 16;
+
+let gcmKeyCache = { keyString: null, key: null };
+
+const importGcmKey = async (aesKeyString) => {
+    if (gcmKeyCache.keyString !== aesKeyString) {
+        const raw = Uint8Array.from(aesKeyString, (c) => c.charCodeAt(0));
+        const key = await window.crypto.subtle.importKey("raw", raw, { name: "AES-GCM" }, false, ["encrypt"]);
+        gcmKeyCache = { keyString: aesKeyString, key };
+    }
+    return gcmKeyCache.key;
+};
+
+/**
+ * Encrypts a JPEG frame in chunked AES-GCM mode (binary protocol, cipher mode 1).
+ * Each chunk is sealed separately so the backend can decrypt a large frame on several cores.
+ * Chunk i uses the frame's random base nonce with its last four bytes XORed with i, and
+ * authenticates (sequence, i, final flag) as additional data, mirroring AESUtil.decryptChunkedInto.
+ * @param {ArrayBuffer} frameData The raw ArrayBuffer of the JPEG frame.
+ * @param {string} aesKeyString The raw byte string of the dynamic AES key.
+ * @param {number} sequence Monotonic frame counter for this stream.
+ * @param {number} chunkKiB Plaintext chunk size in KiB.
+ * @param {number} keyId The id the key was registered under.
+ * @returns {Promise<ArrayBuffer>} Header + sealed chunks, ready for WebSocket.send.
+ */
+export const encryptFrameChunkedGcm = async (frameData, aesKeyString, sequence, chunkKiB, keyId = 0) => {
+    const key = await importGcmKey(aesKeyString);
+    const plaintext = new Uint8Array(frameData);
+    const chunkSize = chunkKiB * 1024;
+    const chunks = Math.max(1, Math.ceil(plaintext.length / chunkSize));
+    const nonce = window.crypto.getRandomValues(new Uint8Array(GCM_NONCE_LENGTH));
+
+    const sealed = await Promise.all(Array.from({ length: chunks }, (_, i) => {
+        const iv = nonce.slice();
+        const ivView = new DataView(iv.buffer);
+        ivView.setUint32(GCM_NONCE_LENGTH - 4, ivView.getUint32(GCM_NONCE_LENGTH - 4) ^ i);
+
+        const aad = new DataView(new ArrayBuffer(13));
+        aad.setBigInt64(0, BigInt(sequence));
+        aad.setUint32(8, i);
+        aad.setUint8(12, i === chunks - 1 ? 1 : 0);
+
+        return window.crypto.subtle.encrypt(
+            { name: "AES-GCM", iv, additionalData: aad.buffer, tagLength: GCM_TAG_LENGTH * 8 },
+            key,
+            plaintext.subarray(i * chunkSize, Math.min(plaintext.length, (i + 1) * chunkSize))
+        );
+    }));
+
+    const payloadLength = sealed.reduce((total, chunk) => total + chunk.byteLength, 0);
+    const buffer = new ArrayBuffer(BINARY_HEADER_LENGTH + payloadLength);
+    const view = new DataView(buffer);
+
+    view.setUint8(0, BINARY_VERSION);
+    view.setUint8(1, BINARY_MODE_GCM_CHUNKED);
+    view.setUint16(2, chunkKiB);
+    view.setBigInt64(4, BigInt(sequence));
+    new Uint8Array(buffer, 12, GCM_NONCE_LENGTH).set(nonce);
+    view.setUint32(24, keyId);
+    view.setUint32(28, payloadLength);
+
+    let offset = BINARY_HEADER_LENGTH;
+    for (const chunk of sealed) {
+        new Uint8Array(buffer, offset, chunk.byteLength).set(new Uint8Array(chunk));
+        offset += chunk.byteLength;
+    }
+    return buffer;
+};
@@ -1,6 +1,6 @@
 import React, { useRef, useEffect, useCallback, useState } from 'react';
-import { WS_BASE_URL, HTTP_BASE_URL  } from './config';
-import { encryptFrame } from './CryptoUtils';
+import { WS_BASE_URL, HTTP_BASE_URL, STREAM_FORMAT, STREAM_CIPHER, GCM_CHUNK_KIB, KEY_ROTATION_INTERVAL_MS } from './config';
+import { encryptFrame, encryptFrameBinary, encryptFrameChunkedGcm } from './CryptoUtils';
 
 const FRAME_RATE_MS = 200;
 
@@ -14,11 +14,14 @@ const VideoStreamer = ({ username }) => {
     const wsRef = useRef(null);
     const intervalRef = useRef(null);
     const aesKeyRef = useRef(null);
+    const keyIdRef = useRef(0);
+    const rotationRef = useRef(null);
+    const sequenceRef = useRef(0);
     const [status, setStatus] = useState('Initializing...');
     const [isStreaming, setIsStreaming] = useState(false);
     const [aesKey, setAesKey] = useState(null); 
 
-    const generateAndRegisterKey = useCallback(async (sessionId) => {
+    const generateAndRegisterKey = useCallback(async (sessionId, keyId = 0) => {
         setStatus('Generating and registering AES key...');
         
         try {
@@ -47,13 +50,17 @@ const VideoStreamer = ({ username }) => {
                 },
                 body: JSON.stringify({
                     sessionId: sessionId,
-                    aesKey: keyString
+                    aesKey: keyString,
+                    cipherMode: STREAM_CIPHER,
+                    keyId: keyId
                 })
             });
 
             if (response.ok) {
                 setStatus('Key registered successfully. Ready to stream.');
+                // Frames switch to the new key only once the backend knows it
                 aesKeyRef.current = keyString;
+                keyIdRef.current = keyId;
                 setAesKey(keyString);
                 return keyString;
             } else {
@@ -73,6 +80,7 @@ const VideoStreamer = ({ username }) => {
         const video = videoRef.current;
         const canvas = canvasRef.current;
         const key = aesKeyRef.current;
+        const keyId = keyIdRef.current;
 
         if (!ws || ws.readyState !== WebSocket.OPEN || !video || !canvas || !key) {
             console.warn('Cannot send frame:', { 
@@ -106,14 +114,21 @@ const VideoStreamer = ({ username }) => {
             }
 
             const reader = new FileReader();
-            reader.onload = () => {
+            reader.onload = async () => {
                 const frameData = reader.result;
 
                 try {
-                    const encryptedFrame = encryptFrame(frameData, key);
+                    let encryptedFrame;
+                    if (STREAM_CIPHER === 'gcm-chunked') {
+                        encryptedFrame = await encryptFrameChunkedGcm(frameData, key, sequenceRef.current++, GCM_CHUNK_KIB, keyId);
+                    } else if (STREAM_FORMAT === 'binary') {
+                        encryptedFrame = encryptFrameBinary(frameData, key, sequenceRef.current++, keyId);
+                    } else {
+                        encryptedFrame = encryptFrame(frameData, key, keyId);
+                    }
                     if (ws.readyState === WebSocket.OPEN) {
                         ws.send(encryptedFrame);
-                        console.log('Frame sent, size:', encryptedFrame.length);
+                        console.log('Frame sent, size:', encryptedFrame.byteLength ?? encryptedFrame.length);
                     }
                 } catch (e) {
                     console.error("Encryption failed:", e);
@@ -141,7 +156,8 @@ const VideoStreamer = ({ username }) => {
             videoRef.current.onloadedmetadata = () => {
                 setStatus('Camera active. Connecting WebSocket...');
 
-                const wsUrl = `${WS_BASE_URL}/stream?username=${user}`;
+                const wsUrl = `${WS_BASE_URL}/stream?username=${user}&format=${STREAM_FORMAT}`;
+                sequenceRef.current = 0;
                 console.log('Connecting to WebSocket:', wsUrl);
                 wsRef.current = new WebSocket(wsUrl);
 
@@ -151,6 +167,12 @@ const VideoStreamer = ({ username }) => {
                     setStatus(`Streaming successfully started for ${user}.`);
                     setIsStreaming(true);
                     intervalRef.current = setInterval(sendFrame, FRAME_RATE_MS);
+                    if (KEY_ROTATION_INTERVAL_MS > 0) {
+                        rotationRef.current = setInterval(() => {
+                            generateAndRegisterKey(user, keyIdRef.current + 1)
+                                .catch((e) => console.error('Key rotation failed:', e));
+                        }, KEY_ROTATION_INTERVAL_MS);
+                    }
                 };
 
                 wsRef.current.onerror = (error) => {
@@ -187,6 +209,10 @@ const VideoStreamer = ({ username }) => {
             clearInterval(intervalRef.current);
             intervalRef.current = null;
         }
+        if (rotationRef.current) {
+            clearInterval(rotationRef.current);
+            rotationRef.current = null;
+        }
 
         if (wsRef.current && wsRef.current.readyState === WebSocket.OPEN) {
             wsRef.current.close();
@@ -205,6 +231,9 @@ const VideoStreamer = ({ username }) => {
             if (intervalRef.current) {
                 clearInterval(intervalRef.current);
             }
+            if (rotationRef.current) {
+                clearInterval(rotationRef.current);
+            }
             if (wsRef.current) {
                 wsRef.current.close();
             }
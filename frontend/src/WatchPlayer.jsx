@@ -0,0 +1,77 @@
+import React, { useEffect, useRef, useState } from 'react';
+import { WS_BASE_URL } from './config';
+
+// Header of every /watch binary message, mirrors backend service/WatchHeader.java
+const HEADER_LENGTH_OFFSET = 2;
+const SEQUENCE_OFFSET = 4;
+const TIMESTAMP_OFFSET = 12;
+
+/**
+ * Plays a stream from the `/watch` WebSocket endpoint: each binary message is one JPEG with a
+ * small header, shown by swapping the <img> source. Displays latency from the header and skipped
+ * frames from the `{"skipped":N}` text messages the server sends when that count changes.
+ */
+const WatchPlayer = ({ streamer, rendition = 'full', style }) => {
+    const imgRef = useRef(null);
+    const [stats, setStats] = useState(null);
+    const [offline, setOffline] = useState(false);
+
+    useEffect(() => {
+        const ws = new WebSocket(`${WS_BASE_URL}/watch?username=${encodeURIComponent(streamer)}&rendition=${rendition}`);
+        ws.binaryType = 'arraybuffer';
+        let objectUrl = null;
+        let frames = 0;
+        let skipped = 0;
+
+        ws.onmessage = (event) => {
+            if (!(event.data instanceof ArrayBuffer)) {
+                skipped = JSON.parse(event.data).skipped ?? skipped;
+                return;
+            }
+            const view = new DataView(event.data);
+            const headerLength = view.getUint16(HEADER_LENGTH_OFFSET);
+            const url = URL.createObjectURL(new Blob([new Uint8Array(event.data, headerLength)], { type: 'image/jpeg' }));
+            if (imgRef.current) {
+                imgRef.current.src = url;
+            }
+            if (objectUrl) {
+                URL.revokeObjectURL(objectUrl);
+            }
+            objectUrl = url;
+
+            // Refresh the overlay a few times per second, not per frame
+            if (frames++ % 10 === 0) {
+                setStats({
+                    sequence: Number(view.getBigInt64(SEQUENCE_OFFSET)),
+                    latencyMs: Date.now() - Number(view.getBigInt64(TIMESTAMP_OFFSET)),
+                    skipped,
+                });
+            }
+        };
+        ws.onopen = () => setOffline(false);
+        ws.onclose = (event) => {
+            console.log('Watch connection closed for', streamer, 'Code:', event.code, 'Reason:', event.reason);
+            setOffline(true);
+        };
+
+        return () => {
+            ws.close();
+            if (objectUrl) {
+                URL.revokeObjectURL(objectUrl);
+            }
+        };
+    }, [streamer, rendition]);
+
+    return (
+        <div>
+            <img ref={imgRef} alt={offline ? 'Stream Offline - Check if streamer is broadcasting' : `Live Stream from ${streamer}`} style={style} />
+            {stats && (
+                <p style={{ fontSize: '0.8em', color: '#666' }}>
+                    Frame #{stats.sequence} · latency {stats.latencyMs} ms · skipped {stats.skipped}
+                </p>
+            )}
+        </div>
+    );
+};
+
+export default WatchPlayer;
@@ -4,4 +4,14 @@ export const BACKEND_PORT = "8080";
 export const HTTP_BASE_URL = `http://${BACKEND_HOST}:${BACKEND_PORT}`;
 export const WS_BASE_URL = `ws://${BACKEND_HOST}:${BACKEND_PORT}`;
 
-export const ENCRYPTION_PREFIX = "AES_ENC_PREFIX::";
\ No newline at end of file
+export const ENCRYPTION_PREFIX = "AES_ENC_PREFIX::";
+// "binary" sends raw ciphertext frames, "text" keeps the Base64 AES_ENC_PREFIX format
+export const STREAM_FORMAT = "binary";
+// "ecb" (default) or "gcm-chunked"; chunked GCM requires STREAM_FORMAT = "binary"
+export const STREAM_CIPHER = "ecb";
+// Plaintext KiB per GCM chunk; frames spanning several chunks are decrypted in parallel
+export const GCM_CHUNK_KIB = 64;
+// Register a fresh AES key (next key id) this often while streaming; 0 disables rotation
+export const KEY_ROTATION_INTERVAL_MS = 0;
+// "mjpeg" plays /view/{username} in an <img>; "websocket" uses the /watch endpoint (per-frame latency and skip stats)
+export const VIEWER_TRANSPORT = "mjpeg";
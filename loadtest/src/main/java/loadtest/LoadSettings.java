@@ -0,0 +1,104 @@
+package loadtest;
+
+import service.ChatBus;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load harness, given as {@code --name=value}.
+ *
+ * @param url Server to load; if null the backend is started in this JVM on {@code port}.
+ * @param nodes In-process backends to start, on consecutive ports from {@code port} and linked by the chat bus.
+ */
+record LoadSettings(String url, int port, int nodes, int streamers, int viewers, int chatClients, int fps, int frameBytes,
+                    String format, String cipher, int chunkKib, String viewerTransport, int durationSeconds,
+                    int reportSeconds, int chatIntervalMs) {
+
+    static LoadSettings parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        LoadSettings settings = new LoadSettings(
+                options.remove("url"),
+                intOption(options, "port", 18080),
+                intOption(options, "nodes", 1),
+                intOption(options, "streamers", 2),
+                intOption(options, "viewers", 8),
+                intOption(options, "chat-clients", 4),
+                intOption(options, "fps", 15),
+                intOption(options, "frame-bytes", 30_000),
+                options.getOrDefault("format", "text"),
+                options.getOrDefault("cipher", "ecb"),
+                intOption(options, "chunk-kib", 64),
+                options.getOrDefault("viewer", "mjpeg"),
+                intOption(options, "duration", 30),
+                intOption(options, "report-interval", 5),
+                intOption(options, "chat-interval-ms", 1000));
+        options.remove("format");
+        options.remove("cipher");
+        options.remove("viewer");
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + options.keySet());
+        }
+        if (settings.nodes() < 1 || settings.nodes() > ChatBus.MAX_NODES || (settings.nodes() > 1 && settings.url() != null)) {
+            throw new IllegalArgumentException("--nodes must be from 1 to " + ChatBus.MAX_NODES + ", and more than 1 only without --url");
+        }
+        if (!settings.format().equals("text") && !settings.format().equals("binary")) {
+            throw new IllegalArgumentException("--format must be text or binary");
+        }
+        if (!settings.cipher().equals("ecb") && !settings.cipher().equals("gcm-chunked")) {
+            throw new IllegalArgumentException("--cipher must be ecb or gcm-chunked");
+        }
+        if (!settings.viewerTransport().equals("mjpeg") && !settings.viewerTransport().equals("websocket")) {
+            throw new IllegalArgumentException("--viewer must be mjpeg or websocket");
+        }
+        if (settings.cipher().equals("gcm-chunked") && !settings.format().equals("binary")) {
+            throw new IllegalArgumentException("--cipher=gcm-chunked requires --format=binary");
+        }
+        return settings;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.remove(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    String baseUrl() {
+        return baseUrl(0);
+    }
+
+    String baseUrl(int node) {
+        return url != null ? url : "http://localhost:" + (port + node);
+    }
+
+    /**
+     * @return Port the in-process node listens on for other nodes' chat batches.
+     */
+    int chatBusPort(int node) {
+        return port + 1000 + node;
+    }
+
+    URI httpUri(String path) {
+        return httpUri(0, path);
+    }
+
+    URI httpUri(int node, String path) {
+        return URI.create(baseUrl(node) + path);
+    }
+
+    URI wsUri(String path) {
+        return wsUri(0, path);
+    }
+
+    URI wsUri(int node, String path) {
+        return URI.create(baseUrl(node).replaceFirst("^http", "ws") + path);
+    }
+}
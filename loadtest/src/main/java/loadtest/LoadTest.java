@@ -0,0 +1,231 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.project.app.Main;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Load harness: synthetic streamers, viewers (MJPEG or {@code /watch} WebSocket) and chat clients against one backend.
+ *
+ * Without {@code --url} the backend is started in this JVM, so a single command measures a
+ * node; server CPU then includes the harness itself. Every report interval it prints sent and
+ * delivered frame rates, end-to-end frame and chat latency percentiles, and server CPU and heap.
+ *
+ * Usage: {@code mvn -q exec:java -Dexec.args="--streamers=4 --viewers=64 --chat-clients=16 --fps=30"}
+ * (see {@link LoadSettings} for all options). Viewers and chat clients are spread evenly over the streams.
+ *
+ * With {@code --nodes=N} the harness starts N backends linked by the TCP chat bus, the way they
+ * would run behind a load balancer without sticky sessions: streamers push to the first node,
+ * the others relay its streams, and viewers and chat clients are assigned to the nodes round-robin.
+ * At the end every chat client must have received every message sent to its room exactly once;
+ * the summary reports any that did not arrive or arrived twice, on one node (the in-process bus)
+ * as well as across several, and the harness then exits with status 1.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadSettings settings = LoadSettings.parse(args);
+
+        List<ConfigurableApplicationContext> servers = new ArrayList<>();
+        if (settings.url() == null) {
+            for (int node = 0; node < settings.nodes(); node++) {
+                servers.add(SpringApplication.run(Main.class, serverArgs(settings, node)));
+            }
+        }
+
+        ObjectMapper json = new ObjectMapper();
+        HttpClient client = HttpClient.newHttpClient();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "load-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        LatencyHistogram frameLatency = new LatencyHistogram();
+        LatencyHistogram chatLatency = new LatencyHistogram();
+        List<SyntheticStreamer> streamers = new ArrayList<>();
+        List<SyntheticViewer> viewers = new ArrayList<>();
+        List<SyntheticChatter> chatters = new ArrayList<>();
+
+        for (int i = 0; i < settings.streamers(); i++) {
+            SyntheticStreamer streamer = new SyntheticStreamer(client, settings, "load-streamer-" + i);
+            streamer.start(json, scheduler);
+            streamers.add(streamer);
+        }
+        for (int i = 0; i < settings.viewers() && !streamers.isEmpty(); i++) {
+            SyntheticViewer viewer = new SyntheticViewer(client, settings, i % settings.nodes(),
+                    streamers.get(i % streamers.size()).username(), frameLatency);
+            Thread thread = new Thread(viewer, "load-viewer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            viewers.add(viewer);
+        }
+        for (int i = 0; i < settings.chatClients() && !streamers.isEmpty(); i++) {
+            SyntheticChatter chatter = new SyntheticChatter(client, settings, json, i % settings.nodes(),
+                    streamers.get(i % streamers.size()).username(), "load-chatter-" + i, chatLatency);
+            chatter.connect();
+            chatters.add(chatter);
+        }
+        for (SyntheticChatter chatter : chatters) {
+            chatter.start(scheduler);
+        }
+
+        System.out.printf("Load test against %s%s: %d streamers at %d fps (%d byte frames, %s, %s), %d %s viewers, %d chat clients%n",
+                settings.baseUrl(), settings.nodes() > 1 ? " and " + (settings.nodes() - 1) + " more nodes" : "",
+                settings.streamers(), settings.fps(), settings.frameBytes(), settings.format(),
+                settings.cipher(),
+                settings.viewers(), settings.viewerTransport(), settings.chatClients());
+
+        Report report = new Report(streamers, viewers, chatters, new ServerStats(client, settings, json));
+        long intervalMillis = settings.reportSeconds() * 1000L;
+        long deadline = System.currentTimeMillis() + settings.durationSeconds() * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(intervalMillis, Math.max(1, deadline - System.currentTimeMillis())));
+            report.interval(frameLatency.drain(), chatLatency.drain());
+        }
+        // Let messages still in flight arrive before checking chat delivery
+        chatters.forEach(SyntheticChatter::stopSending);
+        Thread.sleep(2000);
+        boolean chatComplete = report.summary();
+
+        streamers.forEach(SyntheticStreamer::stop);
+        viewers.forEach(SyntheticViewer::stop);
+        chatters.forEach(SyntheticChatter::stop);
+        servers.forEach(ConfigurableApplicationContext::close);
+        // Lost or repeated chat messages fail the run, so scripts and CI notice
+        System.exit(chatComplete ? 0 : 1);
+    }
+
+    /**
+     * Arguments of one in-process node. With several nodes each one links to all others over the
+     * chat bus, and all but the first relay streams from the first.
+     */
+    private static String[] serverArgs(LoadSettings settings, int node) {
+        List<String> args = new ArrayList<>(List.of("--server.port=" + (settings.port() + node),
+                "--logging.level.root=WARN"));
+        if (settings.nodes() > 1) {
+            List<String> peers = new ArrayList<>();
+            for (int peer = 0; peer < settings.nodes(); peer++) {
+                if (peer != node) {
+                    peers.add("localhost:" + settings.chatBusPort(peer));
+                }
+            }
+            args.add("--chat.bus.node-id=" + node);
+            args.add("--chat.bus.port=" + settings.chatBusPort(node));
+            args.add("--chat.bus.peers=" + String.join(",", peers));
+            if (node > 0) {
+                args.add("--stream.relay.origins=" + settings.baseUrl(0));
+            }
+        }
+        return args.toArray(String[]::new);
+    }
+
+    /**
+     * Turns counter deltas into rates per interval and keeps whole-run totals.
+     */
+    private static final class Report {
+        private final List<SyntheticStreamer> streamers;
+        private final List<SyntheticViewer> viewers;
+        private final List<SyntheticChatter> chatters;
+        private final ServerStats serverStats;
+        private final long startNanos = System.nanoTime();
+
+        private long lastNanos = startNanos;
+        private long lastSent;
+        private long lastSkipped;
+        private long[] lastViewerFrames;
+        private LatencyHistogram.Snapshot totalFrameLatency = LatencyHistogram.Snapshot.empty();
+        private LatencyHistogram.Snapshot totalChatLatency = LatencyHistogram.Snapshot.empty();
+
+        Report(List<SyntheticStreamer> streamers, List<SyntheticViewer> viewers, List<SyntheticChatter> chatters,
+               ServerStats serverStats) {
+            this.streamers = streamers;
+            this.viewers = viewers;
+            this.chatters = chatters;
+            this.serverStats = serverStats;
+            this.lastViewerFrames = new long[viewers.size()];
+        }
+
+        void interval(LatencyHistogram.Snapshot frameLatency, LatencyHistogram.Snapshot chatLatency) {
+            long now = System.nanoTime();
+            double seconds = (now - lastNanos) / 1e9;
+            lastNanos = now;
+
+            long sent = streamers.stream().mapToLong(SyntheticStreamer::sentFrames).sum();
+            long skipped = streamers.stream().mapToLong(SyntheticStreamer::skippedFrames).sum();
+
+            double minViewerFps = Double.MAX_VALUE;
+            double totalViewerFps = 0;
+            for (int i = 0; i < viewers.size(); i++) {
+                long frames = viewers.get(i).frames();
+                double fps = (frames - lastViewerFrames[i]) / seconds;
+                lastViewerFrames[i] = frames;
+                totalViewerFps += fps;
+                minViewerFps = Math.min(minViewerFps, fps);
+            }
+
+            System.out.printf("[%4ds] sent %.1f fps (skipped %d) | viewers avg %.1f fps min %.1f | frame latency %s"
+                            + " | chat latency %s | %s%n",
+                    (now - startNanos) / 1_000_000_000L,
+                    (sent - lastSent) / seconds, skipped - lastSkipped,
+                    viewers.isEmpty() ? 0 : totalViewerFps / viewers.size(),
+                    viewers.isEmpty() ? 0 : minViewerFps,
+                    frameLatency.describe(), chatLatency.describe(), serverStats.describe());
+
+            lastSent = sent;
+            lastSkipped = skipped;
+            totalFrameLatency = totalFrameLatency.merge(frameLatency);
+            totalChatLatency = totalChatLatency.merge(chatLatency);
+        }
+
+        /**
+         * Prints the whole-run totals.
+         * @return true if every chat client received every message sent to its room exactly once.
+         */
+        boolean summary() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long delivered = viewers.stream().mapToLong(SyntheticViewer::frames).sum();
+            long chatReceived = chatters.stream().mapToLong(SyntheticChatter::received).sum();
+            System.out.printf("Summary over %.0fs: sent %d frames, skipped %d at source, delivered %d"
+                            + " (%.1f fps per viewer), chat messages received %d%n",
+                    seconds, lastSent, lastSkipped, delivered,
+                    viewers.isEmpty() ? 0 : delivered / seconds / viewers.size(), chatReceived);
+            System.out.println("  frame latency " + totalFrameLatency.describe());
+            System.out.println("  chat latency  " + totalChatLatency.describe());
+
+            Map<String, Long> sentPerRoom = new HashMap<>();
+            for (SyntheticChatter chatter : chatters) {
+                sentPerRoom.merge(chatter.roomId(), chatter.sent(), Long::sum);
+            }
+            long expected = 0;
+            long missing = 0;
+            long duplicates = 0;
+            int incomplete = 0;
+            for (SyntheticChatter chatter : chatters) {
+                long sent = sentPerRoom.get(chatter.roomId());
+                expected += sent;
+                if (chatter.live() < sent) {
+                    missing += sent - chatter.live();
+                    incomplete++;
+                }
+                duplicates += chatter.duplicates();
+            }
+            System.out.printf("  chat delivery %d of %d messages, %d missing at %d of %d clients, %d duplicates%n",
+                    expected - missing, expected, missing, incomplete, chatters.size(), duplicates);
+            return missing == 0 && duplicates == 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * Server CPU and heap, read from the Actuator metrics endpoint so the numbers come from the
+ * server's own JVM also when it runs on another host.
+ */
+final class ServerStats {
+
+    private final HttpClient client;
+    private final LoadSettings settings;
+    private final ObjectMapper json;
+
+    ServerStats(HttpClient client, LoadSettings settings, ObjectMapper json) {
+        this.client = client;
+        this.settings = settings;
+        this.json = json;
+    }
+
+    String describe() {
+        double cpu = read("process.cpu.usage");
+        double heap = read("jvm.memory.used?tag=area:heap");
+        if (Double.isNaN(cpu) && Double.isNaN(heap)) {
+            return "server stats unavailable";
+        }
+        return String.format("server cpu %.0f%% heap %.0fMB", cpu * 100, heap / (1024 * 1024));
+    }
+
+    private double read(String metric) {
+        try {
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(settings.httpUri("/actuator/metrics/" + metric)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return Double.NaN;
+            }
+            JsonNode measurements = json.readTree(response.body()).path("measurements");
+            return measurements.isEmpty() ? Double.NaN : measurements.get(0).path("value").asDouble();
+        } catch (Exception e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A chat client in a stream's room: sends a message at a fixed interval and records how long
+ * every message sent by any harness client in the room takes to arrive. Messages from before
+ * the client joined (the history catch-up) are counted but not timed.
+ *
+ * The harness connects every client before any of them sends, so each should receive every
+ * message sent to its room live, exactly once, whichever node it is connected to.
+ */
+final class SyntheticChatter implements WebSocket.Listener {
+
+    private final HttpClient client;
+    private final LoadSettings settings;
+    private final ObjectMapper json;
+    private final int node;
+    private final String roomId;
+    private final String username;
+    private final LatencyHistogram latency;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong live = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final Set<Long> liveIds = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sent = new AtomicLong();
+    private final StringBuilder partial = new StringBuilder();
+    private final long joinedAt = System.nanoTime();
+
+    private WebSocket webSocket;
+    private CompletableFuture<WebSocket> inFlight = CompletableFuture.completedFuture(null);
+    private ScheduledFuture<?> task;
+
+    SyntheticChatter(HttpClient client, LoadSettings settings, ObjectMapper json, int node, String roomId,
+                     String username, LatencyHistogram latency) {
+        this.client = client;
+        this.settings = settings;
+        this.json = json;
+        this.node = node;
+        this.roomId = roomId;
+        this.username = username;
+        this.latency = latency;
+    }
+
+    void connect() throws Exception {
+        webSocket = client.newWebSocketBuilder()
+                .buildAsync(settings.wsUri(node, "/chat?roomId=" + roomId + "&username=" + username), this)
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    void start(ScheduledExecutorService scheduler) {
+        task = scheduler.scheduleAtFixedRate(this::send, settings.chatIntervalMs(), settings.chatIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void send() {
+        if (!inFlight.isDone()) {
+            return;
+        }
+        try {
+            inFlight = webSocket.sendText(json.writeValueAsString(Map.of(
+                    "sender", username,
+                    "text", "load test message",
+                    "sentNanos", System.nanoTime())), true);
+            sent.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Chat client " + username + " failed: " + e.getMessage());
+            task.cancel(false);
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            long now = System.nanoTime();
+            try {
+                JsonNode payload = json.readTree(partial.toString());
+                for (JsonNode message : payload.isArray() ? payload : json.createArrayNode().add(payload)) {
+                    received.incrementAndGet();
+                    long sentNanos = message.path("sentNanos").asLong(0);
+                    if (sentNanos < joinedAt) {
+                        continue;
+                    }
+                    if (liveIds.add(message.path("id").asLong())) {
+                        live.incrementAndGet();
+                        latency.record(now - sentNanos);
+                    } else {
+                        duplicates.incrementAndGet();
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Chat client " + username + " got unreadable message: " + e.getMessage());
+            }
+            partial.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    long received() {
+        return received.get();
+    }
+
+    /**
+     * @return Distinct messages sent after this client joined that it received.
+     */
+    long live() {
+        return live.get();
+    }
+
+    /**
+     * @return Messages received again with an ID this client had already seen.
+     */
+    long duplicates() {
+        return duplicates.get();
+    }
+
+    long sent() {
+        return sent.get();
+    }
+
+    String roomId() {
+        return roomId;
+    }
+
+    void stopSending() {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    void stop() {
+        stopSending();
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import security.BinaryFrameHeader;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A streamer without a webcam: registers its key like the frontend does, then pushes
+ * encrypted synthetic JPEGs over {@code /stream} at a fixed rate.
+ *
+ * Each frame carries its send time ({@link System#nanoTime()}) right after the JPEG SOI
+ * marker, which the viewers read back to measure end-to-end latency. When the previous frame
+ * has not been written yet the tick is skipped, as a real capture loop would drop it.
+ * With {@code --cipher=gcm-chunked} frames are sealed chunk by chunk like the frontend does.
+ */
+final class SyntheticStreamer {
+
+    static final int TIMESTAMP_OFFSET = 2;
+
+    private final HttpClient client;
+    private final LoadSettings settings;
+    private final String username;
+    private final byte[] key = new byte[32];
+    private final byte[] jpeg;
+    private final Cipher cipher;
+    private final Cipher gcm;
+    private final SecretKeySpec keySpec;
+    private final Random nonces;
+
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private WebSocket webSocket;
+    private CompletableFuture<WebSocket> inFlight = CompletableFuture.completedFuture(null);
+    private ScheduledFuture<?> task;
+    private long sequence;
+
+    SyntheticStreamer(HttpClient client, LoadSettings settings, String username) throws Exception {
+        this.client = client;
+        this.settings = settings;
+        this.username = username;
+
+        Random random = new Random(username.hashCode());
+        random.nextBytes(key);
+        jpeg = new byte[Math.max(16, settings.frameBytes())];
+        random.nextBytes(jpeg);
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[jpeg.length - 2] = (byte) 0xFF;
+        jpeg[jpeg.length - 1] = (byte) 0xD9;
+
+        keySpec = new SecretKeySpec(key, "AES");
+        cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec);
+        gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        nonces = new Random(random.nextLong());
+    }
+
+    String username() {
+        return username;
+    }
+
+    void start(ObjectMapper json, ScheduledExecutorService scheduler) throws Exception {
+        String body = json.writeValueAsString(Map.of(
+                "sessionId", username,
+                "aesKey", new String(key, StandardCharsets.ISO_8859_1),
+                "cipherMode", settings.cipher()));
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(settings.httpUri("/api/session"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Key registration for " + username + " failed: " + response.statusCode());
+        }
+
+        URI uri = settings.wsUri("/stream?username=" + username + "&format=" + settings.format());
+        webSocket = client.newWebSocketBuilder().buildAsync(uri, new WebSocket.Listener() {
+        }).get(10, TimeUnit.SECONDS);
+
+        long periodMicros = 1_000_000L / settings.fps();
+        task = scheduler.scheduleAtFixedRate(this::tick, 0, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void tick() {
+        if (!inFlight.isDone()) {
+            skippedFrames.incrementAndGet();
+            return;
+        }
+        try {
+            ByteBuffer.wrap(jpeg).putLong(TIMESTAMP_OFFSET, System.nanoTime());
+
+            if ("gcm-chunked".equals(settings.cipher())) {
+                inFlight = webSocket.sendBinary(sealChunked(), true);
+                sentFrames.incrementAndGet();
+                return;
+            }
+            byte[] ciphertext = cipher.doFinal(jpeg);
+
+            if ("binary".equals(settings.format())) {
+                ByteBuffer message = ByteBuffer.allocate(BinaryFrameHeader.HEADER_LENGTH + ciphertext.length);
+                message.put(BinaryFrameHeader.VERSION)
+                        .put(BinaryFrameHeader.MODE_ECB)
+                        .putShort((short) 0)
+                        .putLong(sequence++)
+                        .put(new byte[BinaryFrameHeader.IV_LENGTH])
+                        .putInt(0) // key id
+                        .putInt(ciphertext.length)
+                        .put(ciphertext)
+                        .flip();
+                inFlight = webSocket.sendBinary(message, true);
+            } else {
+                inFlight = webSocket.sendText("AES_ENC_PREFIX::00000000::"
+                        + Base64.getEncoder().encodeToString(ciphertext), true);
+            }
+            sentFrames.incrementAndGet();
+        } catch (Exception e) {
+            System.err.println("Streamer " + username + " failed: " + e.getMessage());
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Builds a chunked GCM message; the nonce and additional data follow {@link BinaryFrameHeader}.
+     */
+    private ByteBuffer sealChunked() throws Exception {
+        int chunkSize = settings.chunkKib() * 1024;
+        int chunks = (jpeg.length + chunkSize - 1) / chunkSize;
+        int payloadLength = jpeg.length + chunks * 16;
+        byte[] nonce = new byte[BinaryFrameHeader.GCM_NONCE_LENGTH];
+        nonces.nextBytes(nonce);
+
+        ByteBuffer message = ByteBuffer.allocate(BinaryFrameHeader.HEADER_LENGTH + payloadLength);
+        message.put(BinaryFrameHeader.VERSION)
+                .put(BinaryFrameHeader.MODE_GCM_CHUNKED)
+                .putShort((short) settings.chunkKib())
+                .putLong(sequence)
+                .put(nonce)
+                .putInt(0) // key id
+                .putInt(payloadLength);
+
+        byte[] iv = new byte[nonce.length];
+        ByteBuffer aad = ByteBuffer.allocate(13);
+        for (int i = 0; i < chunks; i++) {
+            System.arraycopy(nonce, 0, iv, 0, nonce.length);
+            ByteBuffer.wrap(iv).putInt(8, ByteBuffer.wrap(nonce).getInt(8) ^ i);
+            aad.clear();
+            aad.putLong(sequence).putInt(i).put((byte) (i == chunks - 1 ? 1 : 0));
+            gcm.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(128, iv));
+            gcm.updateAAD(aad.array());
+            int start = i * chunkSize;
+            gcm.doFinal(ByteBuffer.wrap(jpeg, start, Math.min(chunkSize, jpeg.length - start)), message);
+        }
+        sequence++;
+        return message.flip();
+    }
+
+    long sentFrames() {
+        return sentFrames.get();
+    }
+
+    long skippedFrames() {
+        return skippedFrames.get();
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+}
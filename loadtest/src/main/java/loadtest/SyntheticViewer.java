@@ -0,0 +1,194 @@
+package loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A viewer of one stream: either MJPEG on {@code /view/{username}}, parsed on its own thread,
+ * or binary messages on the {@code /watch} WebSocket. Counts frames and records each frame's
+ * end-to-end latency from the timestamp the streamer embedded in it.
+ */
+final class SyntheticViewer implements Runnable {
+
+    private static final String CONTENT_LENGTH = "content-length:";
+
+    private final HttpClient client;
+    private final LoadSettings settings;
+    private final int node;
+    private final String username;
+    private final LatencyHistogram latency;
+    private final AtomicLong frames = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile InputStream body;
+    private volatile WebSocket webSocket;
+
+    SyntheticViewer(HttpClient client, LoadSettings settings, int node, String username, LatencyHistogram latency) {
+        this.client = client;
+        this.settings = settings;
+        this.node = node;
+        this.username = username;
+        this.latency = latency;
+    }
+
+    long frames() {
+        return frames.get();
+    }
+
+    @Override
+    public void run() {
+        if (settings.viewerTransport().equals("websocket")) {
+            watch();
+            return;
+        }
+        while (running) {
+            try {
+                HttpResponse<InputStream> response = client.send(
+                        HttpRequest.newBuilder(settings.httpUri(node, "/view/" + username)).build(),
+                        HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() != 200) {
+                    response.body().close();
+                    Thread.sleep(200); // stream not started yet
+                    continue;
+                }
+                body = response.body();
+                readParts(new BufferedInputStream(body, 1 << 16));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Viewer of " + username + " disconnected: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Watches over {@code /watch} until stopped, reconnecting while the stream is not up yet.
+     */
+    private void watch() {
+        while (running) {
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            try {
+                webSocket = client.newWebSocketBuilder()
+                        .buildAsync(settings.wsUri(node, "/watch?username=" + username), new WatchListener(closed))
+                        .get(10, TimeUnit.SECONDS);
+                closed.get();
+                if (running) {
+                    Thread.sleep(200); // stream not started yet, or gone
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (running) {
+                    System.err.println("Viewer of " + username + " disconnected: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reassembles binary messages (header + JPEG, see the backend's WatchHeader) and records each frame.
+     */
+    private final class WatchListener implements WebSocket.Listener {
+        private final CompletableFuture<Void> closed;
+        private ByteBuffer message = ByteBuffer.allocate(1 << 16);
+
+        WatchListener(CompletableFuture<Void> closed) {
+            this.closed = closed;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            if (message.remaining() < data.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(message.capacity() * 2, message.position() + data.remaining()));
+                message.flip();
+                message = larger.put(message);
+            }
+            message.put(data);
+            if (last) {
+                long receivedAt = System.nanoTime();
+                message.flip();
+                int headerLength = Short.toUnsignedInt(message.getShort(2));
+                if (message.limit() >= headerLength + SyntheticStreamer.TIMESTAMP_OFFSET + Long.BYTES) {
+                    latency.record(receivedAt - message.getLong(headerLength + SyntheticStreamer.TIMESTAMP_OFFSET));
+                }
+                frames.incrementAndGet();
+                message.clear();
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed.complete(null);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed.completeExceptionally(error);
+        }
+    }
+
+    private void readParts(InputStream in) throws IOException {
+        int contentLength = -1;
+        String line;
+        while (running && (line = readLine(in)) != null) {
+            if (line.regionMatches(true, 0, CONTENT_LENGTH, 0, CONTENT_LENGTH.length())) {
+                contentLength = Integer.parseInt(line.substring(CONTENT_LENGTH.length()).trim());
+            } else if (line.isEmpty() && contentLength >= 0) {
+                byte[] jpeg = in.readNBytes(contentLength);
+                if (jpeg.length < contentLength) {
+                    return;
+                }
+                long receivedAt = System.nanoTime();
+                if (jpeg.length >= SyntheticStreamer.TIMESTAMP_OFFSET + Long.BYTES) {
+                    latency.record(receivedAt - ByteBuffer.wrap(jpeg).getLong(SyntheticStreamer.TIMESTAMP_OFFSET));
+                }
+                frames.incrementAndGet();
+                contentLength = -1;
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') {
+                    line.setLength(end - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    void stop() {
+        running = false;
+        WebSocket socket = webSocket;
+        if (socket != null) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+        InputStream current = body;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}